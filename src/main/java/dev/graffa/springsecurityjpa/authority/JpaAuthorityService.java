@@ -16,9 +16,14 @@
 
 package dev.graffa.springsecurityjpa.authority;
 
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.util.Optional;
+import java.util.*;
+import java.util.stream.Collectors;
 
 /**
  * <p>Provides an Authority Service, based on JPA Persistence.</p>
@@ -31,6 +36,11 @@ import java.util.Optional;
  * Entities of different implementations of this class will be saved in the Datasource with a different DTYPE, in
  * order to differentiate them from <i>Basic</i> JPA Authorities.
  * </p>
+ * <p>
+ * It also looks up, and creates when missing, the authorities assigned to users and groups by
+ * {@link dev.graffa.springsecurityjpa.user.JpaUserService} and
+ * {@link dev.graffa.springsecurityjpa.group.JpaGroupService}.
+ * </p>
  *
  * <p>
  * See Also:
@@ -54,6 +64,8 @@ import java.util.Optional;
 @Service
 public class JpaAuthorityService {
     protected final JpaAuthorityRepository authorityRepository;
+    @PersistenceContext
+    protected EntityManager entityManager;
 
     public JpaAuthorityService(JpaAuthorityRepository authorityRepository) {
         this.authorityRepository = authorityRepository;
@@ -83,6 +95,27 @@ public class JpaAuthorityService {
         authorityRepository.save(toUpdate);
     }
 
+    /**
+     * Looks all the given authorities up with a single query, creating the missing ones: they are known to be new, so
+     * they are persisted without the select of a merge. It joins the transaction of the caller, if any, otherwise it
+     * runs in its own.
+     *
+     * @return the authorities, in the given order and without duplicates
+     */
+    @Transactional
+    public List<JpaAuthority> findOrCreateAuthorities(Collection<? extends GrantedAuthority> authorities) {
+        Set<String> names = authorities.stream().map(GrantedAuthority::getAuthority)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        if (names.isEmpty()) return new ArrayList<>();
+        Map<String, JpaAuthority> existing = authorityRepository.findAllById(names).stream()
+                .collect(Collectors.toMap(JpaAuthority::getAuthority, auth -> auth));
+        return names.stream().map(name -> existing.computeIfAbsent(name, missing -> {
+            JpaAuthority jpaAuthority = JpaAuthority.builder().authority(missing).build();
+            entityManager.persist(jpaAuthority);
+            return jpaAuthority;
+        })).collect(Collectors.toList());
+    }
+
     public JpaAuthority getByName(String authority) {
         Optional<JpaAuthority> optionalJpaAuthority = authorityRepository.findById(authority);
         if (optionalJpaAuthority.isPresent())
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2002-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.graffa.springsecurityjpa.autoconfigure;
+
+import dev.graffa.springsecurityjpa.user.JpaUserService;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.security.servlet.UserDetailsServiceAutoConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.security.authentication.AuthenticationManager;
+
+/**
+ * <p>
+ * Auto-configuration of the library: it exposes the {@link AuthenticationManager} backed by the
+ * {@link JpaUserService} of the context, or by the class extending it, and registers the runtime hints needed to
+ * run in AOT mode and in GraalVM native images.
+ * </p>
+ * <p>
+ * The {@link AuthenticationManager} used to be declared by a Bean method of {@link JpaUserService} itself: declaring
+ * it in a configuration class keeps the services plain components, which Spring AOT processes into generated bean
+ * definitions without runtime reflection.
+ * </p>
+ * <p>
+ * It is loaded by Spring Boot through <i>AutoConfiguration.imports</i>, after the beans of the application, so its
+ * package must not be component-scanned.
+ * </p>
+ *
+ * <p>
+ * See Also:
+ * JpaUserService, SpringSecurityJpaRuntimeHints
+ * </p>
+ *
+ * @author Raffaele Giordanelli
+ */
+@AutoConfiguration(before = UserDetailsServiceAutoConfiguration.class)
+@ImportRuntimeHints(SpringSecurityJpaRuntimeHints.class)
+public class SpringSecurityJpaAutoConfiguration {
+
+    @Bean
+    @ConditionalOnBean(JpaUserService.class)
+    @ConditionalOnMissingBean(AuthenticationManager.class)
+    public AuthenticationManager authenticationManager(JpaUserService userService) {
+        return userService.authenticationManager();
+    }
+
+}
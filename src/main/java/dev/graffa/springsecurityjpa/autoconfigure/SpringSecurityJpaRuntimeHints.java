@@ -0,0 +1,53 @@
+/*
+ * Copyright 2002-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.graffa.springsecurityjpa.autoconfigure;
+
+import dev.graffa.springsecurityjpa.authority.JpaAuthority;
+import dev.graffa.springsecurityjpa.group.JpaGroup;
+import dev.graffa.springsecurityjpa.rememberme.JpaPersistentLogin;
+import dev.graffa.springsecurityjpa.user.AccountFlags;
+import dev.graffa.springsecurityjpa.user.JpaUser;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+
+import java.util.List;
+
+/**
+ * <p>
+ * Registers the reflection hints needed by Hibernate and Jackson to handle the entities of the library when running
+ * in AOT mode or in a GraalVM native image.
+ * </p>
+ * <p>
+ * Entities extending the ones of the library are found by the entity scan of the application at build time, but they
+ * still need their own hints when they are accessed reflectively outside of Hibernate.
+ * </p>
+ *
+ * @author Raffaele Giordanelli
+ */
+public class SpringSecurityJpaRuntimeHints implements RuntimeHintsRegistrar {
+    static final List<Class<?>> ENTITIES = List.of(JpaUser.class, JpaAuthority.class, JpaGroup.class,
+            JpaPersistentLogin.class);
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        for (Class<?> entity : ENTITIES)
+            hints.reflection().registerType(entity, MemberCategory.DECLARED_FIELDS,
+                    MemberCategory.INVOKE_DECLARED_CONSTRUCTORS, MemberCategory.INVOKE_PUBLIC_METHODS);
+        hints.reflection().registerType(AccountFlags.class, MemberCategory.INVOKE_PUBLIC_METHODS);
+    }
+}
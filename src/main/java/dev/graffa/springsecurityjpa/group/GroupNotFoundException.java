@@ -0,0 +1,10 @@
+package dev.graffa.springsecurityjpa.group;
+
+import dev.graffa.springsecurityjpa.SecurityObjectNotFound;
+
+public class GroupNotFoundException extends SecurityObjectNotFound {
+
+    public GroupNotFoundException(String id) {
+        super("Could not find Group " + id);
+    }
+}
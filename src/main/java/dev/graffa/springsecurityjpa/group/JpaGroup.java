@@ -0,0 +1,88 @@
+/*
+ * Copyright 2002-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.graffa.springsecurityjpa.group;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import dev.graffa.springsecurityjpa.authority.JpaAuthority;
+import dev.graffa.springsecurityjpa.user.JpaUser;
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.SuperBuilder;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * <p>
+ * Provides persistence for a group of users sharing the same authorities, as managed by a
+ * {@link org.springframework.security.provisioning.GroupManager}.
+ * </p>
+ * <p>
+ * Granting an authority to a group grants it to all its members with a single row, instead of one row per member in
+ * the users authorities table.
+ * In order to use the class, it is necessary to include it in the entity scan package classes, or extend it within
+ * the base application package.
+ * </p>
+ *
+ * <p>
+ * See Also:
+ * GroupManager, JpaGroupService, JpaGroupRepository
+ * </p>
+ *
+ * <p><b>Implementation example</b></p>
+ *
+ * <pre>
+ * <code>import jakarta.persistence.Entity;</code>
+ * <code>import dev.graffa.springsecurityjpa.group.JpaGroup;</code>
+ *
+ * <code>@Entity</code>
+ * <code>public class Group extends JpaGroup {</code>
+ * <code>}</code>
+ *
+ * </pre>
+ *
+ * @author Raffaele Giordanelli
+ */
+@Entity(name = "BasicGroup")
+@SuperBuilder
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString(exclude = {"authorities", "members"})
+// Groups is reserved to SQL
+@Table(name = "user_groups")
+public class JpaGroup {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    protected Long id;
+    @Column(name = "group_name", length = 50, nullable = false, unique = true)
+    protected String groupName;
+    @ManyToMany
+    @JoinTable(name = "group_authorities", joinColumns = @JoinColumn(name = "group_id"),
+            inverseJoinColumns = @JoinColumn(name = "authority"))
+    @Builder.Default
+    protected Set<JpaAuthority> authorities = new HashSet<>();
+    @ManyToMany
+    @JoinTable(name = "group_members", joinColumns = @JoinColumn(name = "group_id"),
+            inverseJoinColumns = @JoinColumn(name = "username"))
+    @JsonIgnore
+    @Builder.Default
+    protected Set<JpaUser> members = new HashSet<>();
+
+}
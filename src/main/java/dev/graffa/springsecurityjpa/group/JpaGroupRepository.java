@@ -0,0 +1,111 @@
+/*
+ * Copyright 2002-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.graffa.springsecurityjpa.group;
+
+import dev.graffa.springsecurityjpa.authority.JpaAuthority;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * <p>
+ * Provides a JPA Repository of {@link JpaGroup} entities.
+ * </p>
+ * <p>
+ * Members and authorities are added and removed with single row statements, so that the collections of a group never
+ * need to be loaded in the persistence context.
+ * </p>
+ *
+ * <p>
+ * See Also:
+ * JpaGroup, JpaGroupService
+ * </p>
+ *
+ * @author Raffaele Giordanelli
+ */
+public interface JpaGroupRepository extends JpaRepository<JpaGroup, Long> {
+    /**
+     * Separates the group authority names aggregated by {@link #findUserWithGroupAuthorities(String)}: the unit
+     * separator control character, which is not expected in authority names.
+     */
+    String GROUP_AUTHORITIES_SEPARATOR = "\u001f";
+
+    Optional<JpaGroup> findByGroupName(String groupName);
+
+    boolean existsByGroupName(String groupName);
+
+    @Query("select g.groupName from BasicGroup g order by g.groupName")
+    List<String> findAllGroupNames();
+
+    @Query("select m.username from BasicGroup g join g.members m where g.groupName = :groupName")
+    List<String> findUsernamesByGroupName(@Param("groupName") String groupName);
+
+    @Query("select a.authority from BasicGroup g join g.authorities a where g.groupName = :groupName")
+    List<String> findAuthorityNamesByGroupName(@Param("groupName") String groupName);
+
+    @Query("select distinct a from BasicGroup g join g.members m join g.authorities a where m.username = :username")
+    List<JpaAuthority> findGroupAuthoritiesByUsername(@Param("username") String username);
+
+    /**
+     * Loads a user with its direct authorities, as <code>findById</code> does, together with the names of the
+     * authorities of its groups, aggregated in a single string so that a single statement is executed.
+     *
+     * @return rows holding the same user and its group authority names, separated by
+     * {@link #GROUP_AUTHORITIES_SEPARATOR} or <code>null</code> when none; an empty list when the user does not
+     * exist
+     */
+    @Query("select u, (select listagg(a.authority, '" + GROUP_AUTHORITIES_SEPARATOR + "') from BasicGroup g"
+            + " join g.members m join g.authorities a where m.username = u.username)"
+            + " from BasicUser u left join fetch u.authorities where u.username = :username")
+    List<Object[]> findUserWithGroupAuthorities(@Param("username") String username);
+
+    @Transactional
+    @Modifying
+    @Query(value = "insert into group_members (group_id, username) select g.id, :username from user_groups g"
+            + " where g.group_name = :groupName", nativeQuery = true)
+    int addMember(@Param("groupName") String groupName, @Param("username") String username);
+
+    @Transactional
+    @Modifying
+    @Query(value = "delete from group_members where username = :username"
+            + " and group_id = (select g.id from user_groups g where g.group_name = :groupName)", nativeQuery = true)
+    int removeMember(@Param("groupName") String groupName, @Param("username") String username);
+
+    @Transactional
+    @Modifying
+    @Query(value = "delete from group_members where username in :usernames", nativeQuery = true)
+    int deleteMembershipsByUsernameIn(@Param("usernames") Collection<String> usernames);
+
+    @Transactional
+    @Modifying
+    @Query(value = "insert into group_authorities (group_id, authority) select g.id, :authority from user_groups g"
+            + " where g.group_name = :groupName", nativeQuery = true)
+    int addAuthority(@Param("groupName") String groupName, @Param("authority") String authority);
+
+    @Transactional
+    @Modifying
+    @Query(value = "delete from group_authorities where authority = :authority"
+            + " and group_id = (select g.id from user_groups g where g.group_name = :groupName)", nativeQuery = true)
+    int removeAuthority(@Param("groupName") String groupName, @Param("authority") String authority);
+
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2002-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.graffa.springsecurityjpa.group;
+
+import dev.graffa.springsecurityjpa.authority.JpaAuthorityRepository;
+import dev.graffa.springsecurityjpa.authority.JpaAuthorityService;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.provisioning.GroupManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * <p>Provides a {@link GroupManager} implementation, based on JPA Persistence.</p>
+ * <p>
+ * Members and authorities of a group are added and removed with a single row write, without loading the group
+ * collections. The authorities of the groups a user belongs to are merged with the direct ones by
+ * {@link dev.graffa.springsecurityjpa.user.JpaUserService#loadUserByUsername(String)}.
+ * </p>
+ * <p>
+ * The authorities returned by <b>findGroupAuthorities</b> are cached in the <b>{@value #GROUP_AUTHORITIES_CACHE}</b>
+ * cache when caching is enabled in the context, e.g. through <code>@EnableCaching</code>. The cache only serves the
+ * callers of this {@link GroupManager}: authentication does not use it, as <b>loadUserByUsername</b> already loads
+ * the group authorities with the same query as the user.
+ * </p>
+ *
+ * <p>
+ * See Also:
+ * GroupManager, JpaGroup, JpaGroupRepository
+ * </p>
+ *
+ * <p><b>Implementation example</b></p>
+ *
+ * <pre>
+ *
+ * <code>@Service</code>
+ * <code>public class GroupService extends JpaGroupService {</code>
+ * <code>    public GroupService(JpaGroupRepository groupRepository, JpaAuthorityRepository authorityRepository) {</code>
+ * <code>        super(groupRepository, authorityRepository);</code>
+ * <code>    }</code>
+ * <code>}</code>
+ * </pre>
+ *
+ * @author Raffaele Giordanelli
+ */
+@Service
+public class JpaGroupService implements GroupManager {
+    public static final String GROUP_AUTHORITIES_CACHE = "groupAuthorities";
+
+    protected final JpaGroupRepository groupRepository;
+    protected final JpaAuthorityRepository authorityRepository;
+    protected JpaAuthorityService authorityService;
+
+    public JpaGroupService(JpaGroupRepository groupRepository, JpaAuthorityRepository authorityRepository) {
+        this.groupRepository = groupRepository;
+        this.authorityRepository = authorityRepository;
+    }
+
+    /**
+     * Sets the {@link JpaAuthorityService} looking up and creating the assigned authorities: the unique or primary one
+     * of the context, or a new one when the application does not define it.
+     */
+    @Autowired
+    public void setAuthorityService(ObjectProvider<JpaAuthorityService> authorityServices,
+                                    AutowireCapableBeanFactory beanFactory) {
+        this.authorityService = authorityServices.getIfUnique(() -> beanFactory.createBean(JpaAuthorityService.class));
+    }
+
+    @Override
+    public List<String> findAllGroups() {
+        return groupRepository.findAllGroupNames();
+    }
+
+    @Override
+    public List<String> findUsersInGroup(String groupName) {
+        return groupRepository.findUsernamesByGroupName(groupName);
+    }
+
+    @Override
+    @Transactional
+    @CacheEvict(cacheNames = GROUP_AUTHORITIES_CACHE, key = "#groupName")
+    public void createGroup(String groupName, List<GrantedAuthority> authorities) {
+        if (groupName == null || groupName.length() == 0)
+            throw new IllegalArgumentException("Empty Group");
+        if (groupRepository.existsByGroupName(groupName))
+            throw new IllegalArgumentException("Group " + groupName + " already present");
+        groupRepository.save(JpaGroup.builder().groupName(groupName)
+                .authorities(new HashSet<>(authorityService.findOrCreateAuthorities(authorities))).build());
+    }
+
+    @Override
+    @CacheEvict(cacheNames = GROUP_AUTHORITIES_CACHE, key = "#groupName")
+    public void deleteGroup(String groupName) {
+        Optional<JpaGroup> jpaGroup = groupRepository.findByGroupName(groupName);
+        if (jpaGroup.isEmpty()) throw new GroupNotFoundException(groupName);
+        groupRepository.delete(jpaGroup.get());
+    }
+
+    @Override
+    @Caching(evict = {@CacheEvict(cacheNames = GROUP_AUTHORITIES_CACHE, key = "#oldName"),
+            @CacheEvict(cacheNames = GROUP_AUTHORITIES_CACHE, key = "#newName")})
+    public void renameGroup(String oldName, String newName) {
+        Optional<JpaGroup> optionalJpaGroup = groupRepository.findByGroupName(oldName);
+        if (optionalJpaGroup.isEmpty()) throw new GroupNotFoundException(oldName);
+        if (groupRepository.existsByGroupName(newName))
+            throw new IllegalArgumentException("Group " + newName + " already present");
+        JpaGroup jpaGroup = optionalJpaGroup.get();
+        jpaGroup.setGroupName(newName);
+        groupRepository.save(jpaGroup);
+    }
+
+    @Override
+    public void addUserToGroup(String username, String groupName) {
+        if (groupRepository.addMember(groupName, username) == 0) throw new GroupNotFoundException(groupName);
+    }
+
+    @Override
+    public void removeUserFromGroup(String username, String groupName) {
+        groupRepository.removeMember(groupName, username);
+    }
+
+    @Override
+    @Cacheable(cacheNames = GROUP_AUTHORITIES_CACHE, key = "#groupName")
+    public List<GrantedAuthority> findGroupAuthorities(String groupName) {
+        return groupRepository.findAuthorityNamesByGroupName(groupName).stream()
+                .<GrantedAuthority>map(SimpleGrantedAuthority::new).toList();
+    }
+
+    @Override
+    @Transactional
+    @CacheEvict(cacheNames = GROUP_AUTHORITIES_CACHE, key = "#groupName")
+    public void addGroupAuthority(String groupName, GrantedAuthority authority) {
+        authorityService.findOrCreateAuthorities(List.of(authority));
+        if (groupRepository.addAuthority(groupName, authority.getAuthority()) == 0)
+            throw new GroupNotFoundException(groupName);
+    }
+
+    @Override
+    @CacheEvict(cacheNames = GROUP_AUTHORITIES_CACHE, key = "#groupName")
+    public void removeGroupAuthority(String groupName, GrantedAuthority authority) {
+        groupRepository.removeAuthority(groupName, authority.getAuthority());
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2002-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.graffa.springsecurityjpa.rememberme;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import dev.graffa.springsecurityjpa.user.JpaUser;
+import jakarta.persistence.*;
+import lombok.*;
+import lombok.experimental.SuperBuilder;
+import org.springframework.security.web.authentication.rememberme.PersistentRememberMeToken;
+
+import java.util.Date;
+
+/**
+ * <p>
+ * Provides persistence for a {@link PersistentRememberMeToken} in the application {@link javax.sql.DataSource}, in
+ * the same <i>persistent_logins</i> table used by
+ * {@link org.springframework.security.web.authentication.rememberme.JdbcTokenRepositoryImpl}.
+ * </p>
+ * <p>
+ * In order to use the class, it is necessary to include it in the entity scan package classes, together with
+ * {@link JpaUser}, since every token references the user it has been issued to.
+ * </p>
+ * <p>
+ * Differently from the JDBC schema, <i>username</i> is limited to the 20 characters of the users table and references
+ * it with a foreign key. An existing JDBC <i>persistent_logins</i> table may hold tokens of longer or unknown
+ * usernames, so it has to be cleaned up or dropped before the schema is updated.
+ * </p>
+ *
+ * <p>
+ * See Also:
+ * PersistentRememberMeToken, JpaPersistentTokenRepository, JpaPersistentLoginRepository
+ * </p>
+ *
+ * @author Raffaele Giordanelli
+ */
+@Entity(name = "BasicPersistentLogin")
+@SuperBuilder
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString(exclude = {"user", "token"})
+@Table(name = "persistent_logins", indexes = @Index(name = "persistent_logins_username", columnList = "username"))
+public class JpaPersistentLogin {
+
+    @Id
+    @Column(length = 64, nullable = false)
+    protected String series;
+    @Column(length = 20, nullable = false)
+    protected String username;
+    @Column(length = 64, nullable = false)
+    protected String token;
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "last_used", nullable = false)
+    protected Date lastUsed;
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "username", insertable = false, updatable = false)
+    @JsonIgnore
+    protected JpaUser user;
+
+    public PersistentRememberMeToken toPersistentRememberMeToken() {
+        return new PersistentRememberMeToken(username, series, token, lastUsed);
+    }
+}
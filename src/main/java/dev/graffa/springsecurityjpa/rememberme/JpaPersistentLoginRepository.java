@@ -0,0 +1,74 @@
+/*
+ * Copyright 2002-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.graffa.springsecurityjpa.rememberme;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.Date;
+
+/**
+ * <p>
+ * Provides a JPA Repository of {@link JpaPersistentLogin} entities, keyed by series.
+ * </p>
+ * <p>
+ * Updates and deletions are issued as bulk statements, so that neither the token nor the owning user need to be
+ * loaded in the persistence context.
+ * </p>
+ *
+ * <p>
+ * See Also:
+ * JpaPersistentLogin, JpaPersistentTokenRepository
+ * </p>
+ *
+ * @author Raffaele Giordanelli
+ */
+public interface JpaPersistentLoginRepository extends JpaRepository<JpaPersistentLogin, String> {
+
+    @Transactional
+    @Modifying
+    @Query("update BasicPersistentLogin l set l.token = :token, l.lastUsed = :lastUsed where l.series = :series")
+    int updateToken(@Param("series") String series, @Param("token") String token, @Param("lastUsed") Date lastUsed);
+
+    /**
+     * Moves the <i>last used</i> date of a token forward, leaving it unchanged when the token has been rotated or
+     * already used at a later date, e.g. by a concurrent update written while the pending dates were being flushed.
+     *
+     * @return the number of updated tokens
+     */
+    @Transactional
+    @Modifying
+    @Query("update BasicPersistentLogin l set l.lastUsed = :lastUsed where l.series = :series and l.token = :token"
+            + " and l.lastUsed < :lastUsed")
+    int updateLastUsed(@Param("series") String series, @Param("token") String token,
+                       @Param("lastUsed") Date lastUsed);
+
+    @Transactional
+    @Modifying
+    @Query("delete from BasicPersistentLogin l where l.username = :username")
+    int deleteByUsername(@Param("username") String username);
+
+    @Transactional
+    @Modifying
+    @Query("delete from BasicPersistentLogin l where l.username in :usernames")
+    int deleteByUsernameIn(@Param("usernames") Collection<String> usernames);
+
+}
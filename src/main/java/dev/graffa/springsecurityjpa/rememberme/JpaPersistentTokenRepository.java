@@ -0,0 +1,156 @@
+/*
+ * Copyright 2002-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.graffa.springsecurityjpa.rememberme;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.security.web.authentication.rememberme.PersistentRememberMeToken;
+import org.springframework.security.web.authentication.rememberme.PersistentTokenRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Provides a {@link PersistentTokenRepository} implementation, based on JPA Persistence.</p>
+ * <p>
+ * Differently from {@link org.springframework.security.web.authentication.rememberme.JdbcTokenRepositoryImpl}, an
+ * update that only moves the <i>last used</i> date of a token forward is not written straight away: it is kept in
+ * memory, and all the pending dates are flushed in a single transaction as soon as the configured staleness
+ * threshold has elapsed since the previous flush. Updates that change the token value are always written immediately,
+ * so that cookie theft detection keeps working across nodes and restarts.
+ * </p>
+ * <p>
+ * <b>Note:</b> {@link org.springframework.security.web.authentication.rememberme.PersistentTokenBasedRememberMeServices}
+ * generates a new token value on every automatic login, so none of its updates can be coalesced: they are all written
+ * immediately, as by <code>JdbcTokenRepositoryImpl</code>. Coalescing only applies to remember-me services that
+ * refresh the <i>last used</i> date of a token without rotating it.
+ * </p>
+ * <p>
+ * Pending dates are also flushed on {@link #flush()} and when the context is closed.
+ * </p>
+ *
+ * <p>
+ * See Also:
+ * PersistentTokenRepository, JpaPersistentLogin, JpaPersistentLoginRepository
+ * </p>
+ *
+ * <p><b>Usage example</b></p>
+ *
+ * <pre>
+ * <code>http.rememberMe().tokenRepository(jpaPersistentTokenRepository);</code>
+ * </pre>
+ *
+ * @author Raffaele Giordanelli
+ */
+@Service
+public class JpaPersistentTokenRepository implements PersistentTokenRepository {
+    public static final Duration DEFAULT_LAST_USED_STALENESS = Duration.ofMinutes(1);
+
+    protected final JpaPersistentLoginRepository persistentLoginRepository;
+    protected final TransactionTemplate transactionTemplate;
+    private final Map<String, PendingLastUsed> pending = new ConcurrentHashMap<>();
+    private final AtomicLong lastFlush = new AtomicLong(System.currentTimeMillis());
+    private Duration lastUsedStaleness = DEFAULT_LAST_USED_STALENESS;
+
+    public JpaPersistentTokenRepository(JpaPersistentLoginRepository persistentLoginRepository,
+                                        PlatformTransactionManager transactionManager) {
+        this.persistentLoginRepository = persistentLoginRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * @param lastUsedStaleness how long a <i>last used</i> date may lag behind in the datasource before pending
+     *                          updates are flushed. {@link Duration#ZERO} writes every update straight away.
+     */
+    public void setLastUsedStaleness(Duration lastUsedStaleness) {
+        if (lastUsedStaleness == null || lastUsedStaleness.isNegative())
+            throw new IllegalArgumentException("Invalid staleness " + lastUsedStaleness);
+        this.lastUsedStaleness = lastUsedStaleness;
+    }
+
+    @Override
+    public void createNewToken(PersistentRememberMeToken token) {
+        persistentLoginRepository.save(JpaPersistentLogin.builder().series(token.getSeries())
+                .username(token.getUsername()).token(token.getTokenValue()).lastUsed(token.getDate()).build());
+        pending.put(token.getSeries(), new PendingLastUsed(token.getTokenValue(), token.getDate(), false));
+    }
+
+    @Override
+    public void updateToken(String series, String tokenValue, Date lastUsed) {
+        PendingLastUsed previous = pending.get(series);
+        if (previous != null && previous.tokenValue().equals(tokenValue) && !lastUsedStaleness.isZero()) {
+            pending.put(series, new PendingLastUsed(tokenValue, lastUsed, true));
+        } else {
+            persistentLoginRepository.updateToken(series, tokenValue, lastUsed);
+            pending.put(series, new PendingLastUsed(tokenValue, lastUsed, false));
+        }
+        if (System.currentTimeMillis() - lastFlush.get() >= lastUsedStaleness.toMillis())
+            flush();
+    }
+
+    @Override
+    public PersistentRememberMeToken getTokenForSeries(String seriesId) {
+        return persistentLoginRepository.findById(seriesId).map(login -> {
+            PendingLastUsed pendingLastUsed = pending.get(seriesId);
+            if (pendingLastUsed != null && pendingLastUsed.dirty()
+                    && pendingLastUsed.tokenValue().equals(login.getToken()))
+                return new PersistentRememberMeToken(login.getUsername(), login.getSeries(), login.getToken(),
+                        pendingLastUsed.lastUsed());
+            return login.toPersistentRememberMeToken();
+        }).orElse(null);
+    }
+
+    @Override
+    public void removeUserTokens(String username) {
+        persistentLoginRepository.deleteByUsername(username);
+    }
+
+    /**
+     * Removes the tokens of all the given users with a single bulk statement.
+     */
+    public void removeUserTokens(Collection<String> usernames) {
+        persistentLoginRepository.deleteByUsernameIn(usernames);
+    }
+
+    /**
+     * Writes all the pending <i>last used</i> dates in a single transaction. A date is only written when it is later
+     * than the stored one, so that a concurrent update is never overwritten with an older date.
+     */
+    @PreDestroy
+    public void flush() {
+        lastFlush.set(System.currentTimeMillis());
+        List<Map.Entry<String, PendingLastUsed>> batch = new ArrayList<>();
+        for (String series : List.copyOf(pending.keySet())) {
+            PendingLastUsed pendingLastUsed = pending.remove(series);
+            if (pendingLastUsed != null && pendingLastUsed.dirty()) batch.add(Map.entry(series, pendingLastUsed));
+        }
+        if (batch.isEmpty()) return;
+        transactionTemplate.executeWithoutResult(status -> batch.forEach(entry -> persistentLoginRepository
+                .updateLastUsed(entry.getKey(), entry.getValue().tokenValue(), entry.getValue().lastUsed())));
+    }
+
+    private record PendingLastUsed(String tokenValue, Date lastUsed, boolean dirty) {
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2002-2023 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dev.graffa.springsecurityjpa.user;
+
+import lombok.*;
+
+import java.util.Collection;
+
+/**
+ * <p>
+ * Holds the account flags of {@link JpaUser} entities, where a <code>null</code> flag is not specified.
+ * </p>
+ * <p>
+ * Through {@link JpaUserService#purgeUsers(AccountFlags)} it selects the users to delete, e.g. disabled or expired
+ * accounts: all the non-null flags must match. Through
+ * {@link JpaUserService#updateAccountFlags(Collection, AccountFlags)} it holds the values to set: the non-null flags
+ * are written, the others are left unchanged.
+ * </p>
+ *
+ * <p><b>Usage example</b></p>
+ *
+ * <pre>
+ * <code>userService.purgeUsers(AccountFlags.builder().enabled(false).build());</code>
+ * <code>userService.updateAccountFlags(usernames, AccountFlags.builder().accountNonLocked(true).build());</code>
+ * </pre>
+ *
+ * @author Raffaele Giordanelli
+ */
+@Builder
+@Getter
+@ToString
+@EqualsAndHashCode
+@AllArgsConstructor
+public class AccountFlags {
+    private final Boolean enabled;
+    private final Boolean credentialsNonExpired;
+    private final Boolean accountNonLocked;
+    private final Boolean accountNonExpired;
+
+    public boolean isEmpty() {
+        return enabled == null && credentialsNonExpired == null && accountNonLocked == null
+                && accountNonExpired == null;
+    }
+}
@@ -25,7 +25,7 @@ import lombok.experimental.SuperBuilder;
 import org.springframework.security.core.userdetails.UserDetails;
 
 import java.util.Collection;
-import java.util.List;
+import java.util.ArrayList;
 
 
 /**
@@ -96,7 +96,9 @@ public class JpaUser implements UserDetails {
     protected boolean accountNonExpired = true;
 
     @ManyToMany(fetch = FetchType.EAGER)
+    @JoinTable(name = "users_authorities", joinColumns = @JoinColumn(name = "users_username"),
+            inverseJoinColumns = @JoinColumn(name = "authorities_authority"))
     @Builder.Default
-    protected Collection<JpaAuthority> authorities = List.of();
+    protected Collection<JpaAuthority> authorities = new ArrayList<>();
 
 }
@@ -16,7 +16,16 @@
 
 package dev.graffa.springsecurityjpa.user;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
 /**
  * <p>
  * Provides a JPA Repository of {@link JpaUser} entities.
@@ -45,4 +54,62 @@ import org.springframework.data.jpa.repository.JpaRepository;
  */
 public interface JpaUserRepository extends JpaRepository<JpaUser, String> {
 
+    @Query("select u.username from BasicUser u where (:enabled is null or u.enabled = :enabled)"
+            + " and (:credentialsNonExpired is null or u.credentialsNonExpired = :credentialsNonExpired)"
+            + " and (:accountNonLocked is null or u.accountNonLocked = :accountNonLocked)"
+            + " and (:accountNonExpired is null or u.accountNonExpired = :accountNonExpired) order by u.username")
+    List<String> findUsernamesByFlags(@Param("enabled") Boolean enabled,
+                                      @Param("credentialsNonExpired") Boolean credentialsNonExpired,
+                                      @Param("accountNonLocked") Boolean accountNonLocked,
+                                      @Param("accountNonExpired") Boolean accountNonExpired, Pageable pageable);
+
+    /**
+     * Looks the authority names of a user up, without loading it in the persistence context.
+     *
+     * @return the authority names, a single <code>null</code> name when the user has no authorities, or an empty
+     * list when the user does not exist
+     */
+    @Query("select a.authority from BasicUser u left join u.authorities a where u.username = :username")
+    List<String> findAuthorityNamesOfUser(@Param("username") String username);
+
+    /**
+     * Sets the non-null account flags of the given users with a bulk statement, leaving the other ones unchanged.
+     *
+     * @return the number of updated users
+     */
+    @Transactional
+    @Modifying
+    @Query("update BasicUser u set u.enabled = coalesce(:enabled, u.enabled),"
+            + " u.credentialsNonExpired = coalesce(:credentialsNonExpired, u.credentialsNonExpired),"
+            + " u.accountNonLocked = coalesce(:accountNonLocked, u.accountNonLocked),"
+            + " u.accountNonExpired = coalesce(:accountNonExpired, u.accountNonExpired)"
+            + " where u.username in :usernames")
+    int updateAccountFlags(@Param("usernames") Collection<String> usernames, @Param("enabled") Boolean enabled,
+                           @Param("credentialsNonExpired") Boolean credentialsNonExpired,
+                           @Param("accountNonLocked") Boolean accountNonLocked,
+                           @Param("accountNonExpired") Boolean accountNonExpired);
+
+    @Transactional
+    @Modifying
+    @Query(value = "insert into users_authorities (users_username, authorities_authority)"
+            + " values (:username, :authority)", nativeQuery = true)
+    int addAuthority(@Param("username") String username, @Param("authority") String authority);
+
+    @Transactional
+    @Modifying
+    @Query(value = "delete from users_authorities where users_username = :username"
+            + " and authorities_authority in :authorities", nativeQuery = true)
+    int removeAuthorities(@Param("username") String username, @Param("authorities") Collection<String> authorities);
+
+    /**
+     * Deletes the given users with a bulk statement, without loading them in the persistence context. Their rows in
+     * the users authorities join table are removed by the same statement.
+     *
+     * @return the number of deleted users
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from BasicUser u where u.username in :usernames")
+    int deleteByUsernameIn(@Param("usernames") Collection<String> usernames);
+
 }
@@ -18,22 +18,38 @@ package dev.graffa.springsecurityjpa.user;
 
 import dev.graffa.springsecurityjpa.authority.JpaAuthority;
 import dev.graffa.springsecurityjpa.authority.JpaAuthorityRepository;
-import org.springframework.context.annotation.Bean;
+import dev.graffa.springsecurityjpa.authority.JpaAuthorityService;
+import dev.graffa.springsecurityjpa.group.JpaGroupRepository;
+import dev.graffa.springsecurityjpa.rememberme.JpaPersistentTokenRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.Hibernate;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.ProviderManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.provisioning.UserDetailsManager;
+import org.springframework.security.web.authentication.rememberme.PersistentTokenRepository;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 /**
  * <p>Provides a {@link UserDetailsManager} implementation, based on JPA Persistence.</p>
@@ -46,7 +62,32 @@ import java.util.Optional;
  * order to differentiate them from <i>Basic</i> JPA Users.
  * </p>
  *
- * <p>It also exposes a {@link AuthenticationManager} Bean that uses this service to authenticate users.</p>
+ * <p>It also backs the {@link AuthenticationManager} Bean exposed by the auto-configuration of the library.</p>
+ *
+ * <p>
+ * When a unique or primary {@link PersistentTokenRepository} is available in the context, the remember-me tokens of a user are removed
+ * whenever the user is deleted or changes password.
+ * </p>
+ *
+ * <p>
+ * When a {@link JpaGroupRepository} is available in the context, <b>loadUserByUsername</b> loads the authorities of
+ * the groups the user belongs to with the same query as the user, and merges them with the direct ones into a copy of
+ * the loaded entity. <b>updateUser</b> does not store group authorities as direct ones, unless the user already
+ * holds them directly, so that saving a loaded user never drops a direct grant.
+ * </p>
+ *
+ * <p>
+ * Large cohorts of users can be removed through <b>deleteUsers</b> and <b>purgeUsers</b>, which delete the users and
+ * their authority and group assignments with bulk statements, in chunks of <b>deleteChunkSize</b> users, each one in
+ * its own transaction. Differently from <b>deleteUser</b>, entities are not loaded, so JPA cascades of extending
+ * classes are not applied.
+ * </p>
+ *
+ * <p>
+ * <b>updateUser</b> encodes the password only when it differs from the stored one, so that updating a loaded user
+ * neither pays for a new hash nor hashes the stored one twice. Administrative changes that do not involve the
+ * password are issued with targeted statements through <b>updateAccountFlags</b> and <b>updateAuthorities</b>.
+ * </p>
  *
  * <p>
  * See Also:
@@ -75,17 +116,12 @@ import java.util.Optional;
  * <code>             if (userExists(username))</code>
  * <code>                 throw new IllegalArgumentException("Username " + username + " already present");</code>
  *
- * <code>             User newUser = userRepository.save(</code>
+ * <code>             userRepository.save(</code>
  * <code>                     User.builder().username(username).password(passwordEncoder.encode(castedUser.getPassword()))</code>
  * <code>                             .enabled(castedUser.isEnabled()).accountNonExpired(castedUser.isAccountNonExpired())</code>
  * <code>                             .credentialsNonExpired(castedUser.isCredentialsNonExpired()).email(castedUser.getEmail())</code>
+ * <code>                             .authorities(findOrCreateAuthorities(castedUser.getAuthorities()))</code>
  * <code>                             .build());</code>
- * <code>             List&lt;JpaAuthority&gt; authorities = castedUser.getAuthorities().stream()</code>
- * <code>                     .map(auth -> authorityRepository.findById(auth.getAuthority())</code>
- * <code>                             .orElse(authorityRepository.save(JpaAuthority.builder().authority(auth.getAuthority()).build()))</code>
- * <code>                     ).toList();</code>
- * <code>             newUser.setAuthorities(authorities);</code>
- * <code>             userRepository.save(newUser);</code>
  * <code>         } else throw new IllegalArgumentException("Unsupported class " + userdetails.getClass().getName());</code>
  * <code>     }</code>
  * <code> }</code>
@@ -95,9 +131,18 @@ import java.util.Optional;
  */
 @Service
 public class JpaUserService implements UserDetailsManager {
+    public static final int DEFAULT_DELETE_CHUNK_SIZE = 500;
+
     protected final JpaUserRepository userRepository;
     protected final JpaAuthorityRepository authorityRepository;
     protected final PasswordEncoder passwordEncoder;
+    protected PersistentTokenRepository tokenRepository;
+    protected JpaGroupRepository groupRepository;
+    protected JpaAuthorityService authorityService;
+    protected int deleteChunkSize = DEFAULT_DELETE_CHUNK_SIZE;
+    protected TransactionTemplate transactionTemplate;
+    @PersistenceContext
+    protected EntityManager entityManager;
 
     public JpaUserService(JpaUserRepository userRepository, JpaAuthorityRepository authorityRepository,
                           PasswordEncoder passwordEncoder) {
@@ -106,7 +151,53 @@ public class JpaUserService implements UserDetailsManager {
         this.passwordEncoder = passwordEncoder;
     }
 
-    @Bean
+    public void setTokenRepository(PersistentTokenRepository tokenRepository) {
+        this.tokenRepository = tokenRepository;
+    }
+
+    /**
+     * Uses the {@link PersistentTokenRepository} of the context, when it is unique or primary. Applications defining
+     * their own repository next to {@link JpaPersistentTokenRepository} should mark the one backing remember-me as
+     * primary, otherwise tokens are not removed.
+     */
+    @Autowired
+    public void setTokenRepositories(ObjectProvider<PersistentTokenRepository> tokenRepositories) {
+        this.tokenRepository = tokenRepositories.getIfUnique();
+    }
+
+    @Autowired(required = false)
+    public void setGroupRepository(JpaGroupRepository groupRepository) {
+        this.groupRepository = groupRepository;
+    }
+
+    /**
+     * Sets the {@link JpaAuthorityService} looking up and creating the assigned authorities: the unique or primary one
+     * of the context, or a new one when the application does not define it.
+     */
+    @Autowired
+    public void setAuthorityService(ObjectProvider<JpaAuthorityService> authorityServices,
+                                    AutowireCapableBeanFactory beanFactory) {
+        this.authorityService = authorityServices.getIfUnique(() -> beanFactory.createBean(JpaAuthorityService.class));
+    }
+
+    /**
+     * Sets the transaction manager of the chunks of <b>deleteUsers</b> and <b>purgeUsers</b>, which cannot rely on
+     * <code>@Transactional</code> as they are invoked from within the service.
+     */
+    @Autowired
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public void setDeleteChunkSize(int deleteChunkSize) {
+        if (deleteChunkSize < 1) throw new IllegalArgumentException("Invalid chunk size " + deleteChunkSize);
+        this.deleteChunkSize = deleteChunkSize;
+    }
+
+    /**
+     * @return an {@link AuthenticationManager} authenticating the users of this service. It is exposed as a Bean by
+     * {@link dev.graffa.springsecurityjpa.autoconfigure.SpringSecurityJpaAutoConfiguration}.
+     */
     public AuthenticationManager authenticationManager() {
         DaoAuthenticationProvider authenticationProvider = new DaoAuthenticationProvider();
         authenticationProvider.setUserDetailsService(this);
@@ -115,49 +206,181 @@ public class JpaUserService implements UserDetailsManager {
     }
 
     @Override
+    @Transactional
     public void createUser(UserDetails userdetails) {
         String username = userdetails.getUsername();
         if (userExists(username))
             throw new IllegalArgumentException("Username " + username + " already present");
 
-        JpaUser jpaUser = userRepository.save(
+        // The user is known to be new: persisting it avoids the select and the collection rewrite of a merge
+        entityManager.persist(
                 JpaUser.builder().username(username).password(passwordEncoder.encode(userdetails.getPassword()))
                         .enabled(userdetails.isEnabled()).accountNonExpired(userdetails.isAccountNonExpired())
-                        .credentialsNonExpired(userdetails.isCredentialsNonExpired())/*.authorities(authorities)*/
+                        .credentialsNonExpired(userdetails.isCredentialsNonExpired())
+                        .authorities(findOrCreateAuthorities(userdetails.getAuthorities()))
                         .build());
-        List<JpaAuthority> authorities = userdetails.getAuthorities().stream()
-                .map(auth -> authorityRepository.findById(auth.getAuthority())
-                        .orElse(authorityRepository.save(JpaAuthority.builder().authority(auth.getAuthority()).build()))
-                ).toList();
-        jpaUser.setAuthorities(authorities);
-        userRepository.save(jpaUser);
     }
 
     @Override
+    @Transactional
     public void updateUser(UserDetails user) {
         Optional<JpaUser> optionalJpaUser = userRepository.findById(user.getUsername());
         if (optionalJpaUser.isEmpty()) throw new UserNotFoundException(user.getUsername());
         JpaUser jpaUser = optionalJpaUser.get();
         jpaUser.setEnabled(user.isEnabled());
-        jpaUser.setPassword(passwordEncoder.encode(user.getPassword()));
+        if (passwordRequiresEncoding(user.getPassword(), jpaUser.getPassword()))
+            jpaUser.setPassword(passwordEncoder.encode(user.getPassword()));
         jpaUser.setAccountNonExpired(user.isAccountNonExpired());
         jpaUser.setCredentialsNonExpired(user.isCredentialsNonExpired());
         jpaUser.setAccountNonLocked(user.isAccountNonLocked());
 
-        List<JpaAuthority> authorities = user.getAuthorities().stream()
-                .map(auth -> authorityRepository.findById(auth.getAuthority())
-                        .orElse(authorityRepository.save(JpaAuthority.builder().authority(auth.getAuthority()).build()))).toList();
-        jpaUser.setAuthorities(authorities);
+        List<? extends GrantedAuthority> authorities = directAuthorities(jpaUser, user.getAuthorities());
+        if (!authorityNames(jpaUser.getAuthorities()).equals(authorityNames(authorities))) {
+            List<JpaAuthority> jpaAuthorities = findOrCreateAuthorities(authorities);
+            // Updating the managed collection in place, instead of replacing it, keeps it from being rewritten when
+            // unchanged, also with bytecode enhancement
+            jpaUser.getAuthorities().clear();
+            jpaUser.getAuthorities().addAll(jpaAuthorities);
+        }
         userRepository.save(jpaUser);
     }
 
+    /**
+     * Tells whether the password passed to <b>updateUser</b> has to be encoded before being stored. It does not when
+     * it is missing, e.g. erased from an authenticated principal, or when it is the stored one, e.g. passed back
+     * within a loaded {@link JpaUser}, so that it is neither hashed again nor hashed twice.
+     *
+     * @param password        the password passed to <b>updateUser</b>
+     * @param encodedPassword the stored encoded password
+     */
+    protected boolean passwordRequiresEncoding(String password, String encodedPassword) {
+        return password != null && !password.equals(encodedPassword);
+    }
+
+    /**
+     * Sets the non-null account flags of a user with a single statement, without loading it or touching its
+     * password.
+     */
+    public void updateAccountFlags(String username, AccountFlags flags) {
+        if (updateAccountFlags(List.of(username), flags) == 0) throw new UserNotFoundException(username);
+    }
+
+    /**
+     * Sets the non-null account flags of the given users with a single statement, without loading them or touching
+     * their passwords. Missing users are ignored.
+     *
+     * @return the number of updated users
+     */
+    public int updateAccountFlags(Collection<String> usernames, AccountFlags flags) {
+        if (flags == null || flags.isEmpty()) throw new IllegalArgumentException("Empty account flags");
+        if (usernames.isEmpty()) return 0;
+        return userRepository.updateAccountFlags(usernames, flags.getEnabled(), flags.getCredentialsNonExpired(),
+                flags.getAccountNonLocked(), flags.getAccountNonExpired());
+    }
+
+    /**
+     * Replaces the direct authorities of a user with exactly the given ones, without loading it or touching its
+     * password: only the authorities that are removed or added are written. Differently from <b>updateUser</b>,
+     * authorities granted through a group are not filtered out.
+     */
+    @Transactional
+    public void updateAuthorities(String username, Collection<? extends GrantedAuthority> authorities) {
+        List<String> currentNames = userRepository.findAuthorityNamesOfUser(username);
+        if (currentNames.isEmpty()) throw new UserNotFoundException(username);
+        Set<String> current = currentNames.stream().filter(Objects::nonNull).collect(Collectors.toSet());
+
+        Set<String> names = authorityNames(authorities);
+        List<String> removed = current.stream().filter(name -> !names.contains(name)).toList();
+        if (!removed.isEmpty()) userRepository.removeAuthorities(username, removed);
+        findOrCreateAuthorities(authorities.stream().filter(auth -> !current.contains(auth.getAuthority())).toList())
+                .forEach(authority -> userRepository.addAuthority(username, authority.getAuthority()));
+    }
+
+    /**
+     * Filters out the given authorities the user is granted only through a group, e.g. merged by
+     * <b>loadUserByUsername</b>. The ones the user already holds directly are kept, even when a group grants them
+     * too.
+     */
+    protected List<? extends GrantedAuthority> directAuthorities(JpaUser jpaUser,
+                                                                 Collection<? extends GrantedAuthority> authorities) {
+        if (groupRepository == null) return List.copyOf(authorities);
+        Set<String> groupAuthorities = groupRepository.findGroupAuthoritiesByUsername(jpaUser.getUsername()).stream()
+                .map(JpaAuthority::getAuthority).collect(Collectors.toSet());
+        groupAuthorities.removeAll(authorityNames(jpaUser.getAuthorities()));
+        return authorities.stream().filter(auth -> !groupAuthorities.contains(auth.getAuthority())).toList();
+    }
+
+    private static Set<String> authorityNames(Collection<? extends GrantedAuthority> authorities) {
+        return authorities.stream().map(GrantedAuthority::getAuthority).collect(Collectors.toSet());
+    }
+
+    /**
+     * Looks the given authorities up, creating the missing ones, through
+     * {@link JpaAuthorityService#findOrCreateAuthorities(Collection)}.
+     */
+    protected List<JpaAuthority> findOrCreateAuthorities(Collection<? extends GrantedAuthority> authorities) {
+        return authorityService.findOrCreateAuthorities(authorities);
+    }
+
     @Override
+    @Transactional
     public void deleteUser(String username) {
         Optional<JpaUser> jpaUser = userRepository.findById(username);
         if (jpaUser.isEmpty()) throw new UserNotFoundException(username);
+        if (tokenRepository != null) tokenRepository.removeUserTokens(username);
+        if (groupRepository != null) groupRepository.deleteMembershipsByUsernameIn(List.of(username));
         userRepository.delete(jpaUser.get());
     }
 
+    /**
+     * Deletes the given users in chunks, each one in its own transaction. Missing users are ignored.
+     *
+     * @return the number of deleted users
+     */
+    public int deleteUsers(Collection<String> usernames) {
+        List<String> distinctUsernames = usernames.stream().distinct().toList();
+        int deleted = 0;
+        for (int from = 0; from < distinctUsernames.size(); from += deleteChunkSize)
+            deleted += deleteChunk(distinctUsernames.subList(from,
+                    Math.min(from + deleteChunkSize, distinctUsernames.size())));
+        return deleted;
+    }
+
+    /**
+     * Deletes all the users matching the given account flags in chunks, each one in its own transaction.
+     *
+     * @return the number of deleted users
+     */
+    public long purgeUsers(AccountFlags filter) {
+        if (filter == null || filter.isEmpty()) throw new IllegalArgumentException("Empty account flags filter");
+        long purged = 0;
+        while (true) {
+            List<String> usernames = userRepository.findUsernamesByFlags(filter.getEnabled(),
+                    filter.getCredentialsNonExpired(), filter.getAccountNonLocked(), filter.getAccountNonExpired(),
+                    PageRequest.ofSize(deleteChunkSize));
+            if (usernames.isEmpty()) return purged;
+            int deleted = deleteChunk(usernames);
+            // Nothing left to delete, the users have been removed concurrently
+            if (deleted == 0) return purged;
+            purged += deleted;
+        }
+    }
+
+    /**
+     * Deletes the tokens, the group memberships and the users of a chunk in a single transaction, so that a failing
+     * user deletion leaves the tokens and the memberships of the chunk in place.
+     */
+    protected int deleteChunk(List<String> usernames) {
+        Integer deleted = transactionTemplate.execute(status -> {
+            if (tokenRepository instanceof JpaPersistentTokenRepository jpaTokenRepository)
+                jpaTokenRepository.removeUserTokens(usernames);
+            else if (tokenRepository != null) usernames.forEach(tokenRepository::removeUserTokens);
+            if (groupRepository != null) groupRepository.deleteMembershipsByUsernameIn(usernames);
+            return userRepository.deleteByUsernameIn(usernames);
+        });
+        return deleted == null ? 0 : deleted;
+    }
+
     @Override
     public void changePassword(String oldPassword, String newPassword) {
         Authentication currentUser = SecurityContextHolder.getContext().getAuthentication();
@@ -176,6 +399,7 @@ public class JpaUserService implements UserDetailsManager {
         JpaUser jpaUser = optionalJpaUser.get();
         jpaUser.setPassword(passwordEncoder.encode(newPassword));
         userRepository.save(jpaUser);
+        if (tokenRepository != null) tokenRepository.removeUserTokens(username);
         SecurityContextHolder.getContext().getAuthentication().setAuthenticated(false);
     }
 
@@ -186,8 +410,25 @@ public class JpaUserService implements UserDetailsManager {
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        Optional<JpaUser> userDetails = userRepository.findById(username);
-        if (userDetails.isEmpty()) throw new UserNotFoundException(username);
-        return userDetails.get();
+        if (groupRepository == null) {
+            Optional<JpaUser> userDetails = userRepository.findById(username);
+            if (userDetails.isEmpty()) throw new UserNotFoundException(username);
+            return userDetails.get();
+        }
+        List<Object[]> userWithGroupAuthorities = groupRepository.findUserWithGroupAuthorities(username);
+        if (userWithGroupAuthorities.isEmpty()) throw new UserNotFoundException(username);
+        JpaUser jpaUser = (JpaUser) userWithGroupAuthorities.get(0)[0];
+        String groupAuthorities = (String) userWithGroupAuthorities.get(0)[1];
+        if (groupAuthorities == null) return jpaUser;
+
+        Map<String, JpaAuthority> authorities = new LinkedHashMap<>();
+        jpaUser.getAuthorities().forEach(auth -> authorities.put(auth.getAuthority(), auth));
+        for (String name : groupAuthorities.split(Pattern.quote(JpaGroupRepository.GROUP_AUTHORITIES_SEPARATOR)))
+            authorities.computeIfAbsent(name, missing -> JpaAuthority.builder().authority(missing).build());
+        // Group authorities are merged into a copy, so that they are never flushed as direct ones of a managed user
+        JpaUser userDetails = BeanUtils.instantiateClass(Hibernate.getClass(jpaUser));
+        BeanUtils.copyProperties(jpaUser, userDetails, "authorities");
+        userDetails.setAuthorities(new ArrayList<>(authorities.values()));
+        return userDetails;
     }
 }
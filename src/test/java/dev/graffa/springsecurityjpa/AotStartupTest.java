@@ -0,0 +1,142 @@
+package dev.graffa.springsecurityjpa;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.SpringApplicationAotProcessor;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.provisioning.UserDetailsManager;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Processes the test application ahead of time, then compares the startup of the application in regular and in AOT
+ * mode, checking that users can be created and authenticated in both.
+ * <p>
+ * Every step runs in a new JVM, as the build plugins do: the CGLIB proxies are generated only once per JVM, and the
+ * generated code must be loaded by the same class loader as the classes it accesses.
+ * <p>
+ * The test only runs when <code>aottest.enabled=true</code>, e.g. through <code>mvn test -Paot-test</code>. The AOT
+ * startup may not be slower than the regular one multiplied by <code>aottest.tolerance</code> (default 1.25), which
+ * absorbs the noise of timing a single startup.
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "aottest.enabled", matches = "true")
+public class AotStartupTest {
+    private static final Pattern STARTED = Pattern.compile("AOT startup check: started in (\\d+) ms");
+    private static final double TOLERANCE = Double.parseDouble(System.getProperty("aottest.tolerance", "1.25"));
+
+    @TempDir
+    protected Path output;
+
+    @Test
+    void assertStartupInAotMode() throws Exception {
+        long regular = startAndAuthenticate("regular", List.of(), List.of());
+
+        Path sources = output.resolve("sources"), resources = output.resolve("resources");
+        Path classes = output.resolve("classes");
+        run("aot-processing", List.of(), List.of(), SpringApplicationAotProcessor.class, List.of(
+                SpringSecurityJpaApplication.class.getName(), sources.toString(), resources.toString(),
+                classes.toString(), "dev.graffa", "spring-security-jpa"));
+        compile(sources, classes);
+
+        long aot = startAndAuthenticate("aot", List.of(classes, resources), List.of("-Dspring.aot.enabled=true"));
+        log.info("Startup time: regular {} ms, AOT {} ms", regular, aot);
+        assertTrue(aot <= regular * TOLERANCE,
+                () -> "AOT startup took " + aot + " ms, regular startup " + regular + " ms");
+    }
+
+    private long startAndAuthenticate(String name, List<Path> classpath, List<String> jvmArgs) throws Exception {
+        String log = run(name, classpath, jvmArgs, AotStartup.class, List.of());
+        Matcher matcher = STARTED.matcher(log);
+        assertTrue(matcher.find(), log);
+        return Long.parseLong(matcher.group(1));
+    }
+
+    private String run(String name, List<Path> classpath, List<String> jvmArgs, Class<?> mainClass,
+                       List<String> mainArgs) throws Exception {
+        List<String> command = new ArrayList<>(List.of(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(), "-cp", classpath(classpath)));
+        command.addAll(jvmArgs);
+        command.add(mainClass.getName());
+        command.addAll(mainArgs);
+        command.addAll(args(name));
+        Path log = output.resolve(name + ".log");
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log.toFile()).start();
+        assertEquals(0, process.waitFor(), () -> name + " failed:\n" + readLog(log));
+        return readLog(log);
+    }
+
+    private static String classpath(List<Path> first) {
+        List<String> entries = new ArrayList<>(first.stream().map(Path::toString).toList());
+        entries.add(System.getProperty("java.class.path"));
+        return String.join(File.pathSeparator, entries);
+    }
+
+    private static List<String> args(String database) {
+        return List.of("--spring.profiles.active=test", "--spring.datasource.url=jdbc:h2:mem:" + database,
+                "--spring.main.web-application-type=none", "--spring.jpa.show-sql=false",
+                "--logging.level.org.springframework=info");
+    }
+
+    private static String readLog(Path log) {
+        try {
+            return Files.readString(log);
+        } catch (IOException e) {
+            return e.getMessage();
+        }
+    }
+
+    private static void compile(Path sources, Path classes) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        List<Path> sourceFiles;
+        try (Stream<Path> files = Files.walk(sources)) {
+            sourceFiles = files.filter(file -> file.toString().endsWith(".java")).toList();
+        }
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null)) {
+            assertTrue(compiler.getTask(null, fileManager, null,
+                    List.of("-proc:none", "-d", classes.toString(), "-classpath", classpath(List.of(classes))),
+                    null, fileManager.getJavaFileObjectsFromPaths(sourceFiles)).call());
+        }
+    }
+
+    /**
+     * Starts the test application, then creates and authenticates a user, printing the startup time.
+     */
+    public static class AotStartup {
+
+        public static void main(String[] args) {
+            SpringApplication application = new SpringApplication(SpringSecurityJpaApplication.class);
+            // the AOT initializer is looked up by the name of the main class, otherwise deduced from the stack
+            application.setMainApplicationClass(SpringSecurityJpaApplication.class);
+            long start = System.nanoTime();
+            try (ConfigurableApplicationContext context = application.run(args)) {
+                long elapsed = (System.nanoTime() - start) / 1_000_000;
+                context.getBean(UserDetailsManager.class)
+                        .createUser(User.withUsername("aotUser").password("pwd").authorities("USER").build());
+                if (!context.getBean(AuthenticationManager.class)
+                        .authenticate(UsernamePasswordAuthenticationToken.unauthenticated("aotUser", "pwd"))
+                        .isAuthenticated()) throw new IllegalStateException("aotUser not authenticated");
+                System.out.println("AOT startup check: started in " + elapsed + " ms");
+            }
+        }
+    }
+}
@@ -7,10 +7,13 @@ import dev.graffa.springsecurityjpa.authority.Role;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.test.context.ActiveProfiles;
 
-import static org.junit.jupiter.api.Assertions.assertNotNull;
-import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBootTest
 @ActiveProfiles("test")
@@ -38,6 +41,21 @@ public class AuthorityServiceTest {
         assertThrows(AuthorityNotFoundException.class, () -> authorityService.deleteAuthority("randomAuthority"));
     }
 
+    @Test
+    void assertFindOrCreateAuthorities() {
+        authorityService.createAuthority(Role.USER.name);
+        // outside of a transaction, the missing authority is created in its own
+        List<JpaAuthority> authorities = authorityService.findOrCreateAuthorities(List.of(
+                new SimpleGrantedAuthority("randomAuthority"), new SimpleGrantedAuthority(Role.USER.name),
+                new SimpleGrantedAuthority("randomAuthority")));
+        assertEquals(List.of("randomAuthority", Role.USER.name),
+                authorities.stream().map(GrantedAuthority::getAuthority).toList());
+        assertNotNull(authorityService.getByName("randomAuthority"));
+
+        authorityService.deleteAuthority("randomAuthority");
+        authorityService.deleteAuthority(Role.USER.name);
+    }
+
     @Test
     void assertUpdateUser() {
         String authority = "randomAuthority", newAuthorityName = "changedRandomAuthority";
@@ -0,0 +1,51 @@
+package dev.graffa.springsecurityjpa;
+
+import dev.graffa.springsecurityjpa.user.JpaUser;
+import dev.graffa.springsecurityjpa.user.JpaUserService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.security.web.authentication.rememberme.InMemoryTokenRepositoryImpl;
+import org.springframework.security.web.authentication.rememberme.PersistentRememberMeToken;
+import org.springframework.security.web.authentication.rememberme.PersistentTokenRepository;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that an application can define its own {@link PersistentTokenRepository} next to the one of the library,
+ * and that the primary one is used to remove the tokens of deleted users.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+public class CustomTokenRepositoryTest {
+    @Autowired
+    protected JpaUserService userDetailsService;
+    @Autowired
+    protected PersistentTokenRepository tokenRepository;
+
+    @TestConfiguration
+    static class TokenRepositoryConfiguration {
+        @Bean
+        @Primary
+        public PersistentTokenRepository inMemoryTokenRepository() {
+            return new InMemoryTokenRepositoryImpl();
+        }
+    }
+
+    @Test
+    void assertRemoveTokensOfDeletedUser() {
+        assertInstanceOf(InMemoryTokenRepositoryImpl.class, tokenRepository);
+        String username = "customTokenUser";
+        userDetailsService.createUser(JpaUser.builder().username(username).password("pwd").build());
+        tokenRepository.createNewToken(new PersistentRememberMeToken(username, "customSeries", "token", new Date()));
+
+        userDetailsService.deleteUser(username);
+        assertNull(tokenRepository.getTokenForSeries("customSeries"));
+    }
+}
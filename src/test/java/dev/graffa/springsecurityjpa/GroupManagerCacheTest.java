@@ -0,0 +1,88 @@
+package dev.graffa.springsecurityjpa;
+
+import dev.graffa.springsecurityjpa.authority.JpaAuthorityService;
+import dev.graffa.springsecurityjpa.group.JpaGroupService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.List;
+
+import static dev.graffa.springsecurityjpa.group.JpaGroupService.GROUP_AUTHORITIES_CACHE;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the cached group authorities are evicted by every group change, with caching enabled.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+public class GroupManagerCacheTest {
+    @Autowired
+    protected JpaGroupService groupService;
+    @Autowired
+    protected JpaAuthorityService authorityService;
+    @Autowired
+    protected CacheManager cacheManager;
+
+    private final String group = "cachedGroup", renamedGroup = "renamedGroup";
+
+    @TestConfiguration
+    @EnableCaching
+    static class CachingConfiguration {
+    }
+
+    @AfterEach
+    void cleanUp() {
+        for (String groupName : groupService.findAllGroups())
+            groupService.deleteGroup(groupName);
+        for (String authority : List.of("GROUP_READ", "GROUP_WRITE"))
+            if (authorityService.getByName(authority) != null) authorityService.deleteAuthority(authority);
+    }
+
+    @Test
+    void assertEvictOnCreateGroup() {
+        assertTrue(groupService.findGroupAuthorities(group).isEmpty());
+        assertNotNull(cacheManager.getCache(GROUP_AUTHORITIES_CACHE).get(group));
+
+        groupService.createGroup(group, List.of(new SimpleGrantedAuthority("GROUP_READ")));
+        assertEquals(List.of("GROUP_READ"), authorities(groupService.findGroupAuthorities(group)));
+    }
+
+    @Test
+    void assertEvictOnRenameGroup() {
+        groupService.createGroup(group, List.of(new SimpleGrantedAuthority("GROUP_READ")));
+        assertEquals(List.of("GROUP_READ"), authorities(groupService.findGroupAuthorities(group)));
+        assertTrue(groupService.findGroupAuthorities(renamedGroup).isEmpty());
+
+        groupService.renameGroup(group, renamedGroup);
+        assertTrue(groupService.findGroupAuthorities(group).isEmpty());
+        assertEquals(List.of("GROUP_READ"), authorities(groupService.findGroupAuthorities(renamedGroup)));
+    }
+
+    @Test
+    void assertEvictOnAuthorityChanges() {
+        groupService.createGroup(group, List.of(new SimpleGrantedAuthority("GROUP_READ")));
+        assertEquals(List.of("GROUP_READ"), authorities(groupService.findGroupAuthorities(group)));
+
+        groupService.addGroupAuthority(group, new SimpleGrantedAuthority("GROUP_WRITE"));
+        assertEquals(List.of("GROUP_READ", "GROUP_WRITE"), authorities(groupService.findGroupAuthorities(group)));
+
+        groupService.removeGroupAuthority(group, new SimpleGrantedAuthority("GROUP_READ"));
+        assertEquals(List.of("GROUP_WRITE"), authorities(groupService.findGroupAuthorities(group)));
+
+        groupService.deleteGroup(group);
+        assertTrue(groupService.findGroupAuthorities(group).isEmpty());
+    }
+
+    private static List<String> authorities(List<GrantedAuthority> authorities) {
+        return authorities.stream().map(GrantedAuthority::getAuthority).sorted().toList();
+    }
+
+}
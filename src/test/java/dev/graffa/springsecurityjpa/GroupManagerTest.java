@@ -0,0 +1,144 @@
+package dev.graffa.springsecurityjpa;
+
+import dev.graffa.springsecurityjpa.authority.JpaAuthority;
+import dev.graffa.springsecurityjpa.authority.JpaAuthorityService;
+import dev.graffa.springsecurityjpa.group.GroupNotFoundException;
+import dev.graffa.springsecurityjpa.group.JpaGroupService;
+import dev.graffa.springsecurityjpa.user.JpaUser;
+import dev.graffa.springsecurityjpa.user.JpaUserRepository;
+import dev.graffa.springsecurityjpa.user.JpaUserService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+public class GroupManagerTest {
+    @Autowired
+    protected JpaGroupService groupService;
+    @Autowired
+    protected JpaUserService userDetailsService;
+    @Autowired
+    protected JpaAuthorityService authorityService;
+    @Autowired
+    protected JpaUserRepository userRepository;
+    @Autowired
+    protected PlatformTransactionManager transactionManager;
+
+    private final String username = "groupUser", group = "operators";
+
+    @AfterEach
+    void cleanUp() {
+        if (userDetailsService.userExists(username)) userDetailsService.deleteUser(username);
+        for (String groupName : groupService.findAllGroups())
+            groupService.deleteGroup(groupName);
+        for (String authority : List.of("GROUP_READ", "GROUP_WRITE", "DIRECT"))
+            if (authorityService.getByName(authority) != null) authorityService.deleteAuthority(authority);
+    }
+
+    @Test
+    void assertCreateRenameDeleteGroup() {
+        groupService.createGroup(group, List.of(new SimpleGrantedAuthority("GROUP_READ")));
+        assertThrows(IllegalArgumentException.class, () -> groupService.createGroup(group, List.of()));
+        assertEquals(List.of(group), groupService.findAllGroups());
+
+        groupService.renameGroup(group, "admins");
+        assertEquals(List.of("admins"), groupService.findAllGroups());
+        assertEquals(List.of("GROUP_READ"), authorities(groupService.findGroupAuthorities("admins")));
+
+        groupService.deleteGroup("admins");
+        assertTrue(groupService.findAllGroups().isEmpty());
+        assertThrows(GroupNotFoundException.class, () -> groupService.deleteGroup("admins"));
+    }
+
+    @Test
+    void assertGroupAuthorities() {
+        groupService.createGroup(group, List.of(new SimpleGrantedAuthority("GROUP_READ")));
+        groupService.addGroupAuthority(group, new SimpleGrantedAuthority("GROUP_WRITE"));
+        assertEquals(List.of("GROUP_READ", "GROUP_WRITE"), authorities(groupService.findGroupAuthorities(group)));
+
+        groupService.removeGroupAuthority(group, new SimpleGrantedAuthority("GROUP_READ"));
+        assertEquals(List.of("GROUP_WRITE"), authorities(groupService.findGroupAuthorities(group)));
+        assertThrows(GroupNotFoundException.class,
+                () -> groupService.addGroupAuthority("missingGroup", new SimpleGrantedAuthority("GROUP_READ")));
+    }
+
+    @Test
+    void assertMergeGroupAuthoritiesOnLoad() {
+        userDetailsService.createUser(JpaUser.builder().username(username).password("pwd")
+                .authorities(List.of(JpaAuthority.builder()
+                        .authority("DIRECT").build())).build());
+        groupService.createGroup(group, List.of(new SimpleGrantedAuthority("GROUP_READ"),
+                new SimpleGrantedAuthority("DIRECT")));
+        groupService.addUserToGroup(username, group);
+        assertEquals(List.of(username), groupService.findUsersInGroup(group));
+
+        JpaUser jpaUser = (JpaUser) userDetailsService.loadUserByUsername(username);
+        assertEquals(List.of("DIRECT", "GROUP_READ"), authorities(jpaUser.getAuthorities()));
+
+        // Group authorities are not stored as direct ones, direct ones granted by a group too are kept
+        userDetailsService.updateUser(jpaUser);
+        assertEquals(List.of("DIRECT"), userRepository.findAuthorityNamesOfUser(username));
+        groupService.removeUserFromGroup(username, group);
+        jpaUser = (JpaUser) userDetailsService.loadUserByUsername(username);
+        assertEquals(List.of("DIRECT"), authorities(jpaUser.getAuthorities()));
+        assertTrue(groupService.findUsersInGroup(group).isEmpty());
+
+        groupService.addUserToGroup(username, group);
+        userDetailsService.deleteUser(username);
+        assertTrue(groupService.findUsersInGroup(group).isEmpty());
+    }
+
+    @Test
+    void assertUpdateAuthoritiesGrantedByGroup() {
+        userDetailsService.createUser(JpaUser.builder().username(username).password("pwd")
+                .authorities(List.of(JpaAuthority.builder().authority("DIRECT").build())).build());
+        groupService.createGroup(group, List.of(new SimpleGrantedAuthority("GROUP_READ"),
+                new SimpleGrantedAuthority("DIRECT")));
+        groupService.addUserToGroup(username, group);
+
+        // explicit grants are stored as they are, even when a group grants them too
+        userDetailsService.updateAuthorities(username, List.of(new SimpleGrantedAuthority("DIRECT"),
+                new SimpleGrantedAuthority("GROUP_READ")));
+        assertEquals(List.of("DIRECT", "GROUP_READ"),
+                userRepository.findAuthorityNamesOfUser(username).stream().sorted().toList());
+    }
+
+    @Test
+    void assertKeepManagedUserOnLoad() {
+        userDetailsService.createUser(JpaUser.builder().username(username).password("pwd")
+                .authorities(List.of(JpaAuthority.builder().authority("DIRECT").build())).build());
+        groupService.createGroup(group, List.of(new SimpleGrantedAuthority("GROUP_READ")));
+        groupService.addUserToGroup(username, group);
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            JpaUser managedUser = userRepository.findById(username).orElseThrow();
+            managedUser.setEnabled(false);
+            JpaUser loadedUser = (JpaUser) userDetailsService.loadUserByUsername(username);
+            assertNotSame(managedUser, loadedUser);
+            assertEquals(List.of("DIRECT", "GROUP_READ"), authorities(loadedUser.getAuthorities()));
+            assertEquals(List.of("DIRECT"), authorities(managedUser.getAuthorities()));
+        });
+
+        // the change of the caller is flushed, the group authorities are not
+        JpaUser jpaUser = userRepository.findById(username).orElseThrow();
+        assertFalse(jpaUser.isEnabled());
+        assertEquals(List.of("DIRECT"), authorities(jpaUser.getAuthorities()));
+    }
+
+    private static List<String> authorities(Collection<? extends GrantedAuthority> authorities) {
+        return authorities.stream().map(GrantedAuthority::getAuthority).sorted().toList();
+    }
+
+}
@@ -0,0 +1,164 @@
+package dev.graffa.springsecurityjpa;
+
+import dev.graffa.springsecurityjpa.rememberme.JpaPersistentLoginRepository;
+import dev.graffa.springsecurityjpa.rememberme.JpaPersistentTokenRepository;
+import dev.graffa.springsecurityjpa.user.JpaUser;
+import dev.graffa.springsecurityjpa.user.JpaUserService;
+import jakarta.servlet.http.Cookie;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.web.authentication.rememberme.CookieTheftException;
+import org.springframework.security.web.authentication.rememberme.PersistentRememberMeToken;
+import org.springframework.security.web.authentication.rememberme.PersistentTokenBasedRememberMeServices;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.security.web.authentication.rememberme.AbstractRememberMeServices.SPRING_SECURITY_REMEMBER_ME_COOKIE_KEY;
+
+@SpringBootTest
+@ActiveProfiles("test")
+public class PersistentTokenRepositoryTest {
+    @Autowired
+    protected JpaPersistentTokenRepository tokenRepository;
+    @Autowired
+    protected JpaPersistentLoginRepository persistentLoginRepository;
+    @Autowired
+    protected JpaUserService userDetailsService;
+    @Autowired
+    protected AuthenticationManager authenticationManager;
+
+    private final String username = "rememberedUser", pwd = "pwd";
+
+    @AfterEach
+    void restoreStaleness() {
+        tokenRepository.flush();
+        tokenRepository.setLastUsedStaleness(JpaPersistentTokenRepository.DEFAULT_LAST_USED_STALENESS);
+        if (userDetailsService.userExists(username)) userDetailsService.deleteUser(username);
+    }
+
+    @Test
+    void assertCreateGetUpdateToken() {
+        userDetailsService.createUser(JpaUser.builder().username(username).password(pwd).build());
+        tokenRepository.createNewToken(new PersistentRememberMeToken(username, "series", "token", new Date(0)));
+
+        PersistentRememberMeToken token = tokenRepository.getTokenForSeries("series");
+        assertEquals(username, token.getUsername());
+        assertEquals("token", token.getTokenValue());
+        assertNull(tokenRepository.getTokenForSeries("missingSeries"));
+
+        tokenRepository.updateToken("series", "newToken", new Date(1000));
+        assertEquals("newToken", persistentLoginRepository.findById("series").orElseThrow().getToken());
+        assertEquals(1000, tokenRepository.getTokenForSeries("series").getDate().getTime());
+    }
+
+    @Test
+    void assertCoalesceLastUsedUpdates() {
+        userDetailsService.createUser(JpaUser.builder().username(username).password(pwd).build());
+        tokenRepository.createNewToken(new PersistentRememberMeToken(username, "series", "token", new Date(0)));
+
+        tokenRepository.updateToken("series", "token", new Date(1000));
+        tokenRepository.updateToken("series", "token", new Date(2000));
+        assertEquals(0, persistentLoginRepository.findById("series").orElseThrow().getLastUsed().getTime());
+        assertEquals(2000, tokenRepository.getTokenForSeries("series").getDate().getTime());
+
+        tokenRepository.flush();
+        assertEquals(2000, persistentLoginRepository.findById("series").orElseThrow().getLastUsed().getTime());
+    }
+
+    @Test
+    void assertFlushNeverMovesLastUsedBackwards() {
+        userDetailsService.createUser(JpaUser.builder().username(username).password(pwd).build());
+        tokenRepository.createNewToken(new PersistentRememberMeToken(username, "series", "token", new Date(0)));
+
+        tokenRepository.updateToken("series", "token", new Date(2000));
+        // a later date written by another node, or while the pending dates were being flushed
+        persistentLoginRepository.updateToken("series", "token", new Date(3000));
+        tokenRepository.flush();
+        assertEquals(3000, persistentLoginRepository.findById("series").orElseThrow().getLastUsed().getTime());
+    }
+
+    @Test
+    void assertRotateTokenOnAutoLogin() {
+        userDetailsService.createUser(JpaUser.builder().username(username).password(pwd).build());
+        RememberMeServices rememberMeServices = new RememberMeServices();
+
+        MockHttpServletResponse loginResponse = new MockHttpServletResponse();
+        rememberMeServices.loginSuccess(new MockHttpServletRequest(), loginResponse,
+                UsernamePasswordAuthenticationToken.authenticated(username, null, List.of()));
+        Cookie cookie = loginResponse.getCookie(SPRING_SECURITY_REMEMBER_ME_COOKIE_KEY);
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(cookie);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertNotNull(rememberMeServices.autoLogin(request, response));
+        // the token is rotated, so the update is written straight away instead of being coalesced
+        String[] seriesAndToken = rememberMeServices
+                .decode(response.getCookie(SPRING_SECURITY_REMEMBER_ME_COOKIE_KEY));
+        assertEquals(seriesAndToken[1], persistentLoginRepository.findById(seriesAndToken[0]).orElseThrow().getToken());
+
+        MockHttpServletRequest stolenRequest = new MockHttpServletRequest();
+        stolenRequest.setCookies(cookie);
+        assertThrows(CookieTheftException.class,
+                () -> rememberMeServices.autoLogin(stolenRequest, new MockHttpServletResponse()));
+    }
+
+    @Test
+    void assertFlushWhenStalenessIsCrossed() {
+        userDetailsService.createUser(JpaUser.builder().username(username).password(pwd).build());
+        tokenRepository.createNewToken(new PersistentRememberMeToken(username, "series", "token", new Date(0)));
+        tokenRepository.setLastUsedStaleness(Duration.ZERO);
+
+        tokenRepository.updateToken("series", "token", new Date(1000));
+        assertEquals(1000, persistentLoginRepository.findById("series").orElseThrow().getLastUsed().getTime());
+    }
+
+    @Test
+    void assertDeleteTokensWithUser() {
+        userDetailsService.createUser(JpaUser.builder().username(username).password(pwd).build());
+        tokenRepository.createNewToken(new PersistentRememberMeToken(username, "series1", "token", new Date()));
+        tokenRepository.createNewToken(new PersistentRememberMeToken(username, "series2", "token", new Date()));
+
+        userDetailsService.deleteUser(username);
+        assertNull(tokenRepository.getTokenForSeries("series1"));
+        assertNull(tokenRepository.getTokenForSeries("series2"));
+    }
+
+    @Test
+    void assertDeleteTokensOnChangePassword() {
+        userDetailsService.createUser(JpaUser.builder().username(username).password(pwd).build());
+        tokenRepository.createNewToken(new PersistentRememberMeToken(username, "series", "token", new Date()));
+
+        SecurityContextHolder.getContext().setAuthentication(authenticationManager
+                .authenticate(UsernamePasswordAuthenticationToken.unauthenticated(username, pwd)));
+        userDetailsService.changePassword(pwd, "pwd2");
+
+        assertNull(tokenRepository.getTokenForSeries("series"));
+    }
+
+    /**
+     * Exposes the decoding of the remember-me cookies.
+     */
+    private class RememberMeServices extends PersistentTokenBasedRememberMeServices {
+
+        RememberMeServices() {
+            super("key", userDetailsService, tokenRepository);
+            setAlwaysRemember(true);
+        }
+
+        String[] decode(Cookie cookie) {
+            return decodeCookie(cookie.getValue());
+        }
+    }
+
+}
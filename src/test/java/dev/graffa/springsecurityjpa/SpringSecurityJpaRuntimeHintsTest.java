@@ -0,0 +1,56 @@
+package dev.graffa.springsecurityjpa;
+
+import dev.graffa.springsecurityjpa.authority.JpaAuthority;
+import dev.graffa.springsecurityjpa.autoconfigure.SpringSecurityJpaRuntimeHints;
+import dev.graffa.springsecurityjpa.group.JpaGroup;
+import dev.graffa.springsecurityjpa.rememberme.JpaPersistentLogin;
+import dev.graffa.springsecurityjpa.user.AccountFlags;
+import dev.graffa.springsecurityjpa.user.JpaUser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SpringSecurityJpaRuntimeHintsTest {
+    private final RuntimeHints hints = new RuntimeHints();
+
+    @BeforeEach
+    void registerHints() {
+        new SpringSecurityJpaRuntimeHints().registerHints(hints, getClass().getClassLoader());
+    }
+
+    @Test
+    void assertUserHints() {
+        assertEntityHints(JpaUser.class);
+    }
+
+    @Test
+    void assertAuthorityHints() {
+        assertEntityHints(JpaAuthority.class);
+    }
+
+    @Test
+    void assertGroupHints() {
+        assertEntityHints(JpaGroup.class);
+    }
+
+    @Test
+    void assertPersistentLoginHints() {
+        assertEntityHints(JpaPersistentLogin.class);
+    }
+
+    @Test
+    void assertAccountFlagsHints() {
+        assertTrue(RuntimeHintsPredicates.reflection().onType(AccountFlags.class)
+                .withMemberCategories(MemberCategory.INVOKE_PUBLIC_METHODS).test(hints));
+    }
+
+    private void assertEntityHints(Class<?> entity) {
+        assertTrue(RuntimeHintsPredicates.reflection().onType(entity)
+                .withMemberCategories(MemberCategory.DECLARED_FIELDS, MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+                        MemberCategory.INVOKE_PUBLIC_METHODS).test(hints), entity.getName());
+    }
+}
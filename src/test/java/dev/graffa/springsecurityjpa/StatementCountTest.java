@@ -0,0 +1,208 @@
+package dev.graffa.springsecurityjpa;
+
+import dev.graffa.springsecurityjpa.authority.JpaAuthority;
+import dev.graffa.springsecurityjpa.authority.JpaAuthorityService;
+import dev.graffa.springsecurityjpa.group.JpaGroupService;
+import dev.graffa.springsecurityjpa.test.SqlStatementCounter;
+import dev.graffa.springsecurityjpa.test.SqlStatementCounts;
+import dev.graffa.springsecurityjpa.user.AccountFlags;
+import dev.graffa.springsecurityjpa.user.JpaUser;
+import dev.graffa.springsecurityjpa.user.JpaUserService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static dev.graffa.springsecurityjpa.test.SqlStatementCounter.assertStatements;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Pins the number of statements executed by every service operation, so that extra queries fail the build.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+public class StatementCountTest {
+    @Autowired
+    protected JpaUserService userDetailsService;
+    @Autowired
+    protected JpaAuthorityService authorityService;
+    @Autowired
+    protected AuthenticationManager authenticationManager;
+    @Autowired
+    protected JpaGroupService groupService;
+
+    private final String username = "countedUser", pwd = "pwd", group = "countedGroup";
+
+    @AfterEach
+    void cleanUp() {
+        SecurityContextHolder.clearContext();
+        userDetailsService.deleteUsers(List.of(username, "countedUser1", "countedUser2"));
+        if (groupService.findAllGroups().contains(group)) groupService.deleteGroup(group);
+        for (int i = 0; i < 6; i++)
+            if (authorityService.getByName("COUNTED" + i) != null) authorityService.deleteAuthority("COUNTED" + i);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 5})
+    void assertCreateUserWithNewAuthorities(int authorities) {
+        // user lookup, authorities lookup: new authorities are persisted without a select each
+        assertStatements(SqlStatementCounts.of(authorities > 0 ? 2 : 1, 1 + 2 * authorities, 0, 0),
+                () -> createUser(username, authorities));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 5})
+    void assertCreateUserWithExistingAuthorities(int authorities) {
+        createUser("countedUser1", authorities);
+        assertStatements(SqlStatementCounts.of(authorities > 0 ? 2 : 1, 1 + authorities, 0, 0),
+                () -> createUser(username, authorities));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 5})
+    void assertReadUser(int authorities) {
+        createUser(username, authorities);
+        // user with direct and group authorities
+        assertStatements(SqlStatementCounts.of(1, 0, 0, 0), () -> userDetailsService.loadUserByUsername(username));
+        assertStatements(SqlStatementCounts.of(1, 0, 0, 0), () -> authenticationManager
+                .authenticate(UsernamePasswordAuthenticationToken.unauthenticated(username, pwd)));
+        assertStatements(SqlStatementCounts.of(1, 0, 0, 0), () -> userDetailsService.userExists(username));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 5})
+    void assertUpdateUser(int authorities) {
+        createUser(username, authorities);
+        // user, group authorities; the unchanged authorities are not rewritten
+        assertStatements(SqlStatementCounts.of(2, 0, 1, 0),
+                () -> userDetailsService.updateUser(user(username, authorities)));
+        // one more authority, created: the authorities collection is recreated
+        assertStatements(SqlStatementCounts.of(3, authorities + 2, 1, authorities > 0 ? 1 : 0),
+                () -> userDetailsService.updateUser(user(username, authorities + 1)));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 5})
+    void assertUpdateLoadedUser(int authorities) {
+        createUser(username, authorities);
+        JpaUser user = (JpaUser) userDetailsService.loadUserByUsername(username);
+        // the stored password is neither encoded nor written again
+        assertStatements(SqlStatementCounts.of(2, 0, 0, 0), () -> userDetailsService.updateUser(user));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 5})
+    void assertUpdateAccountFlags(int authorities) {
+        createUser(username, authorities);
+        assertStatements(SqlStatementCounts.of(0, 0, 1, 0), () -> userDetailsService.updateAccountFlags(
+                List.of(username, "countedUser1"), AccountFlags.builder().enabled(false).build()));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 5})
+    void assertUpdateAuthorities(int authorities) {
+        createUser(username, authorities);
+        assertStatements(SqlStatementCounts.of(1, 0, 0, 0),
+                () -> userDetailsService.updateAuthorities(username, authorities(authorities)));
+        List<JpaAuthority> replaced = authorities(authorities);
+        if (!replaced.isEmpty()) replaced.remove(0);
+        replaced.add(JpaAuthority.builder().authority("COUNTED5").build());
+        // one authority removed, a new one created: only their rows are written
+        assertStatements(SqlStatementCounts.of(2, 2, 0, authorities > 0 ? 1 : 0),
+                () -> userDetailsService.updateAuthorities(username, replaced));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 5})
+    void assertChangePassword(int authorities) {
+        createUser(username, authorities);
+        SecurityContextHolder.getContext().setAuthentication(
+                UsernamePasswordAuthenticationToken.authenticated(username, null, List.of()));
+        assertStatements(SqlStatementCounts.of(3, 0, 1, 1), () -> userDetailsService.changePassword(pwd, pwd));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 5})
+    void assertDeleteUser(int authorities) {
+        createUser(username, authorities);
+        // user lookup, reused by the deletion; tokens, memberships, authorities, user
+        assertStatements(SqlStatementCounts.of(1, 0, 0, authorities > 0 ? 4 : 3),
+                () -> userDetailsService.deleteUser(username));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 5})
+    void assertDeleteUsers(int authorities) {
+        for (String name : List.of(username, "countedUser1", "countedUser2"))
+            createUser(name, authorities);
+        assertStatements(SqlStatementCounts.of(0, 0, 0, 4),
+                () -> userDetailsService.deleteUsers(List.of(username, "countedUser1", "countedUser2")));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 5})
+    void assertPurgeUsers(int authorities) {
+        for (String name : List.of(username, "countedUser1", "countedUser2"))
+            userDetailsService.createUser(JpaUser.builder().username(name).password(pwd).enabled(false)
+                    .authorities(authorities(authorities)).build());
+        // one chunk, then an empty lookup
+        assertStatements(SqlStatementCounts.of(2, 0, 0, 4),
+                () -> userDetailsService.purgeUsers(AccountFlags.builder().enabled(false).build()));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 5})
+    void assertCreateGroupWithNewAuthorities(int authorities) {
+        // group lookup, authorities lookup: new authorities are persisted without a select each
+        assertStatements(SqlStatementCounts.of(authorities > 0 ? 2 : 1, 1 + 2 * authorities, 0, 0),
+                () -> groupService.createGroup(group, new ArrayList<>(authorities(authorities))));
+        // authority lookup, new authority, group authority row
+        assertStatements(SqlStatementCounts.of(1, 2, 0, 0), () -> groupService.addGroupAuthority(group,
+                JpaAuthority.builder().authority("COUNTED5").build()));
+    }
+
+    @Test
+    void assertRecordOnlyInCountingScope() {
+        List<String> inner = new ArrayList<>();
+        List<String> outer = SqlStatementCounter.record(() -> {
+            userDetailsService.userExists(username);
+            inner.addAll(SqlStatementCounter.record(() -> userDetailsService.userExists(username)));
+        });
+        assertEquals(1, inner.size());
+        // the statements of a nested scope are not recorded by the outer one
+        assertEquals(1, outer.size());
+    }
+
+    @Test
+    void assertAuthorityOperations() {
+        assertStatements(SqlStatementCounts.of(2, 1, 0, 0), () -> authorityService.createAuthority("COUNTED0"));
+        assertStatements(SqlStatementCounts.of(1, 0, 0, 0), () -> authorityService.getByName("COUNTED0"));
+        assertStatements(SqlStatementCounts.of(2, 0, 0, 0), () -> authorityService.updateAuthority("COUNTED0",
+                JpaAuthority.builder().authority("COUNTED0").build()));
+        assertStatements(SqlStatementCounts.of(2, 0, 0, 1), () -> authorityService.deleteAuthority("COUNTED0"));
+    }
+
+    private void createUser(String name, int authorities) {
+        userDetailsService.createUser(user(name, authorities));
+    }
+
+    private JpaUser user(String name, int authorities) {
+        return JpaUser.builder().username(name).password(pwd).authorities(authorities(authorities)).build();
+    }
+
+    private static List<JpaAuthority> authorities(int count) {
+        return IntStream.range(0, count).mapToObj(i -> JpaAuthority.builder().authority("COUNTED" + i).build())
+                .collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+    }
+
+}
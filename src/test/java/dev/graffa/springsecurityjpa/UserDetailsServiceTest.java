@@ -1,21 +1,33 @@
 package dev.graffa.springsecurityjpa;
 
 import dev.graffa.springsecurityjpa.authority.JpaAuthority;
+import dev.graffa.springsecurityjpa.authority.JpaAuthorityService;
 import dev.graffa.springsecurityjpa.authority.Role;
+import dev.graffa.springsecurityjpa.rememberme.JpaPersistentTokenRepository;
+import dev.graffa.springsecurityjpa.user.AccountFlags;
 import dev.graffa.springsecurityjpa.user.JpaUser;
 import dev.graffa.springsecurityjpa.user.JpaUserService;
 import dev.graffa.springsecurityjpa.user.UserNotFoundException;
 import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.security.authentication.*;
 import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.provisioning.GroupManager;
+import org.springframework.security.web.authentication.rememberme.PersistentRememberMeToken;
 import org.springframework.test.context.ActiveProfiles;
 
-import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 @Slf4j
 @SpringBootTest
@@ -25,7 +37,20 @@ public class UserDetailsServiceTest {
     protected JpaUserService userDetailsService;
     @Autowired
     protected AuthenticationManager authenticationManager;
+    @Autowired
+    protected JpaAuthorityService authorityService;
+    @Autowired
+    protected JpaPersistentTokenRepository tokenRepository;
+    @Autowired
+    protected GroupManager groupManager;
+    @Autowired
+    protected JdbcTemplate jdbcTemplate;
 
+    @AfterEach
+    void deleteAuthorities() {
+        for (Role role : Role.values())
+            if (authorityService.getByName(role.name) != null) authorityService.deleteAuthority(role.name);
+    }
 
     @Test
     void assertFailDuplicateUserCreation() {
@@ -80,12 +105,73 @@ public class UserDetailsServiceTest {
         userDetails.getAuthorities().add(JpaAuthority.builder().authority(Role.USER.name).build());
         userDetailsService.updateUser(userDetails);
 
-        assertThrows(BadCredentialsException.class, () -> context.setAuthentication(authenticationManager
+        assertThrows(CredentialsExpiredException.class, () -> context.setAuthentication(authenticationManager
                 .authenticate(UsernamePasswordAuthenticationToken.unauthenticated(username, pwd))));
 
         userDetailsService.deleteUser(username);
     }
 
+    @Test
+    void assertUpdateUserKeepsStoredPassword() {
+        String username = "randomUser", pwd = "pwd";
+        userDetailsService.createUser(JpaUser.builder().username(username).password(pwd).build());
+
+        JpaUser userDetails = (JpaUser) userDetailsService.loadUserByUsername(username);
+        String encodedPassword = userDetails.getPassword();
+        userDetailsService.updateUser(userDetails);
+        assertEquals(encodedPassword, userDetailsService.loadUserByUsername(username).getPassword());
+        assertTrue(authenticationManager.authenticate(UsernamePasswordAuthenticationToken.unauthenticated(username, pwd))
+                .isAuthenticated());
+
+        userDetails.setPassword("pwd2");
+        userDetailsService.updateUser(userDetails);
+        assertTrue(authenticationManager.authenticate(UsernamePasswordAuthenticationToken.unauthenticated(username,
+                "pwd2")).isAuthenticated());
+
+        userDetailsService.deleteUser(username);
+    }
+
+    @Test
+    void assertUpdateAccountFlags() {
+        String username = "randomUser", pwd = "pwd";
+        userDetailsService.createUser(JpaUser.builder().username(username).password(pwd).build());
+
+        userDetailsService.updateAccountFlags(username, AccountFlags.builder().accountNonLocked(false).build());
+        JpaUser userDetails = (JpaUser) userDetailsService.loadUserByUsername(username);
+        assertFalse(userDetails.isAccountNonLocked());
+        assertTrue(userDetails.isEnabled());
+        assertThrows(LockedException.class, () -> authenticationManager
+                .authenticate(UsernamePasswordAuthenticationToken.unauthenticated(username, pwd)));
+
+        assertEquals(1, userDetailsService.updateAccountFlags(List.of(username, "missingUser"),
+                AccountFlags.builder().accountNonLocked(true).build()));
+        assertTrue(authenticationManager.authenticate(UsernamePasswordAuthenticationToken.unauthenticated(username, pwd))
+                .isAuthenticated());
+
+        assertThrows(UserNotFoundException.class, () -> userDetailsService.updateAccountFlags("missingUser",
+                AccountFlags.builder().enabled(false).build()));
+        assertThrows(IllegalArgumentException.class,
+                () -> userDetailsService.updateAccountFlags(username, AccountFlags.builder().build()));
+        userDetailsService.deleteUser(username);
+    }
+
+    @Test
+    void assertUpdateAuthorities() {
+        String username = "randomUser";
+        userDetailsService.createUser(JpaUser.builder().username(username).password("pwd")
+                .authorities(List.of(JpaAuthority.builder().authority(Role.USER.name).build())).build());
+
+        userDetailsService.updateAuthorities(username, List.of(JpaAuthority.builder().authority(Role.ADMIN.name).build()));
+        assertEquals(List.of(Role.ADMIN.name), userDetailsService.loadUserByUsername(username).getAuthorities()
+                .stream().map(GrantedAuthority::getAuthority).toList());
+
+        userDetailsService.updateAuthorities(username, List.of());
+        assertTrue(userDetailsService.loadUserByUsername(username).getAuthorities().isEmpty());
+
+        assertThrows(UserNotFoundException.class, () -> userDetailsService.updateAuthorities("missingUser", List.of()));
+        userDetailsService.deleteUser(username);
+    }
+
     @Test
     void assertUserToString() {
 
@@ -123,4 +209,71 @@ public class UserDetailsServiceTest {
         userDetailsService.deleteUser(username);
     }
 
+    @Test
+    void assertDeleteUsersInChunks() {
+        List<String> usernames = List.of("bulkUser1", "bulkUser2", "bulkUser3", "bulkUser4", "bulkUser5");
+        for (String username : usernames)
+            userDetailsService.createUser(JpaUser.builder().username(username).password("pwd")
+                    .authorities(List.of(JpaAuthority.builder().authority(Role.USER.name).build())).build());
+
+        userDetailsService.setDeleteChunkSize(2);
+        try {
+            assertEquals(5, userDetailsService.deleteUsers(List.of("bulkUser1", "bulkUser2", "bulkUser3",
+                    "bulkUser4", "bulkUser5", "bulkUser5", "missingUser")));
+        } finally {
+            userDetailsService.setDeleteChunkSize(JpaUserService.DEFAULT_DELETE_CHUNK_SIZE);
+        }
+        for (String username : usernames)
+            assertFalse(userDetailsService.userExists(username));
+    }
+
+    @Test
+    void assertDeleteUserRollsBackOnFailure() {
+        String username = "referencedUser";
+        userDetailsService.createUser(JpaUser.builder().username(username).password("pwd").build());
+        tokenRepository.createNewToken(new PersistentRememberMeToken(username, "referencedSeries", "token",
+                new Date()));
+        groupManager.createGroup("referencedGroup", List.of());
+        groupManager.addUserToGroup(username, "referencedGroup");
+        // a table of an extending application referencing the user
+        jdbcTemplate.execute("create table user_notes (username varchar(20) references users(username))");
+        jdbcTemplate.update("insert into user_notes (username) values (?)", username);
+        try {
+            assertThrows(DataIntegrityViolationException.class, () -> userDetailsService.deleteUser(username));
+            assertThrows(DataIntegrityViolationException.class,
+                    () -> userDetailsService.deleteUsers(List.of(username)));
+            assertNotNull(tokenRepository.getTokenForSeries("referencedSeries"));
+            assertEquals(List.of(username), groupManager.findUsersInGroup("referencedGroup"));
+        } finally {
+            jdbcTemplate.execute("drop table user_notes");
+        }
+        userDetailsService.deleteUser(username);
+        groupManager.deleteGroup("referencedGroup");
+    }
+
+    @Test
+    void assertPurgeDisabledUsers() {
+        for (int i = 0; i < 3; i++)
+            userDetailsService.createUser(JpaUser.builder().username("disabledUser" + i).password("pwd")
+                    .enabled(false)
+                    .authorities(List.of(JpaAuthority.builder().authority(Role.USER.name).build())).build());
+        userDetailsService.createUser(JpaUser.builder().username("enabledUser").password("pwd").build());
+
+        userDetailsService.setDeleteChunkSize(2);
+        try {
+            assertEquals(3, userDetailsService.purgeUsers(AccountFlags.builder().enabled(false).build()));
+        } finally {
+            userDetailsService.setDeleteChunkSize(JpaUserService.DEFAULT_DELETE_CHUNK_SIZE);
+        }
+        assertFalse(userDetailsService.userExists("disabledUser0"));
+        assertTrue(userDetailsService.userExists("enabledUser"));
+        userDetailsService.deleteUser("enabledUser");
+    }
+
+    @Test
+    void assertFailPurgeWithEmptyFilter() {
+        assertThrows(IllegalArgumentException.class,
+                () -> userDetailsService.purgeUsers(AccountFlags.builder().build()));
+    }
+
 }
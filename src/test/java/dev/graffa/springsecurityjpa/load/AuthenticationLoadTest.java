@@ -0,0 +1,259 @@
+package dev.graffa.springsecurityjpa.load;
+
+import com.zaxxer.hikari.HikariDataSource;
+import dev.graffa.springsecurityjpa.authority.JpaAuthority;
+import dev.graffa.springsecurityjpa.authority.JpaAuthorityService;
+import dev.graffa.springsecurityjpa.user.JpaUser;
+import dev.graffa.springsecurityjpa.user.JpaUserService;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.sql.DataSource;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * <p>
+ * Drives the {@link AuthenticationManager} exposed by {@link JpaUserService} together with a mixed read/write
+ * workload from many concurrent threads against the embedded H2 datasource, so that contention between the
+ * connection pool, the Hibernate sessions and the password encoder shows up.
+ * </p>
+ * <p>
+ * The test only runs when <code>loadtest.enabled=true</code>, e.g. through <code>mvn test -Pload-test</code>. It is
+ * configured through the following system properties:
+ * </p>
+ * <ul>
+ *     <li><code>loadtest.threads</code>: number of concurrent workers (default 8)</li>
+ *     <li><code>loadtest.threadKind</code>: <code>platform</code> or <code>virtual</code> (JDK 21+, default
+ *     platform)</li>
+ *     <li><code>loadtest.operations</code>: measured operations per worker (default 50)</li>
+ *     <li><code>loadtest.warmup</code>: unmeasured operations per worker (default 5)</li>
+ *     <li><code>loadtest.users</code>: size of the user population (default 32)</li>
+ *     <li><code>loadtest.mix</code>: operation weights (default
+ *     <code>authenticate:60,loadUserByUsername:25,updateUser:10,changePassword:5</code>)</li>
+ *     <li><code>loadtest.output</code>: report directory (default <code>target/load-test</code>)</li>
+ * </ul>
+ * <p>
+ * Each run writes a JSON report holding throughput and p50/p99/p999 latencies per operation, along with the
+ * connection pool size, so that different pool and cache settings can be compared on the same hardware. They are
+ * passed as Spring properties on the command line, e.g.
+ * <code>mvn test -Pload-test -Dspring.datasource.hikari.maximum-pool-size=16</code> for the pool size, or
+ * <code>-Dspring.jpa.properties.hibernate.query.plan_cache_max_size=64</code> for Hibernate caches.
+ * </p>
+ * <p>
+ * SQL and debug logging of the test profile are turned off, so that the workers do not contend on the console
+ * instead of the components under test.
+ * </p>
+ */
+@Slf4j
+@SpringBootTest(properties = {"spring.jpa.show-sql=false", "logging.level.org.springframework=info",
+        "logging.level.dev.graffa=info"})
+@ActiveProfiles("test")
+@EnabledIfSystemProperty(named = "loadtest.enabled", matches = "true")
+public class AuthenticationLoadTest {
+    private static final String USERNAME_PREFIX = "load";
+    private static final String PASSWORD = "pwd";
+    private static final String AUTHORITY = "LOAD_TEST";
+
+    @Autowired
+    protected JpaUserService userDetailsService;
+    @Autowired
+    protected JpaAuthorityService authorityService;
+    @Autowired
+    protected AuthenticationManager authenticationManager;
+    @Autowired
+    protected DataSource dataSource;
+
+    private final int threads = Integer.getInteger("loadtest.threads", 8);
+    private final String threadKind = System.getProperty("loadtest.threadKind", "platform");
+    private final int operations = Integer.getInteger("loadtest.operations", 50);
+    private final int warmup = Integer.getInteger("loadtest.warmup", 5);
+    private final int users = Integer.getInteger("loadtest.users", 32);
+    private final Map<Operation, Integer> mix = parseMix(System.getProperty("loadtest.mix",
+            "authenticate:60,loadUserByUsername:25,updateUser:10,changePassword:5"));
+    private final Path output = Path.of(System.getProperty("loadtest.output", "target/load-test"));
+
+    enum Operation {
+        authenticate, loadUserByUsername, updateUser, changePassword
+    }
+
+    @BeforeEach
+    void createUsers() {
+        for (int i = 0; i < users; i++)
+            userDetailsService.createUser(JpaUser.builder().username(USERNAME_PREFIX + i).password(PASSWORD)
+                    .authorities(List.of(JpaAuthority.builder().authority(AUTHORITY).build())).build());
+    }
+
+    @AfterEach
+    void deleteUsers() {
+        for (int i = 0; i < users; i++)
+            userDetailsService.deleteUser(USERNAME_PREFIX + i);
+        authorityService.deleteAuthority(AUTHORITY);
+    }
+
+    @Test
+    void mixedWorkload() throws Exception {
+        Map<Operation, LatencyHistogram> histograms = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values())
+            histograms.put(operation, new LatencyHistogram());
+
+        run(warmup, null);
+        long start = System.nanoTime();
+        run(operations, histograms);
+        long elapsedNanos = System.nanoTime() - start;
+
+        String report = toJson(histograms, elapsedNanos);
+        Files.createDirectories(output);
+        Path file = output.resolve("authentication-" + Instant.now().toEpochMilli() + ".json");
+        Files.writeString(file, report);
+        log.info("Load test report written to {}: {}", file.toAbsolutePath(), report);
+
+        long completed = histograms.values().stream().mapToLong(LatencyHistogram::count).sum();
+        long errors = histograms.values().stream().mapToLong(LatencyHistogram::errors).sum();
+        assertEquals((long) threads * operations, completed + errors);
+        assertTrue(completed > 0);
+    }
+
+    private void run(int operationsPerThread, Map<Operation, LatencyHistogram> histograms) throws Exception {
+        ExecutorService executor = newExecutor();
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            CountDownLatch startSignal = new CountDownLatch(1);
+            for (int t = 0; t < threads; t++)
+                workers.add(executor.submit(() -> {
+                    startSignal.await();
+                    work(operationsPerThread, histograms);
+                    return null;
+                }));
+            startSignal.countDown();
+            for (Future<?> worker : workers)
+                worker.get();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void work(int operationsPerThread, Map<Operation, LatencyHistogram> histograms) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int totalWeight = mix.values().stream().mapToInt(Integer::intValue).sum();
+        try {
+            for (int i = 0; i < operationsPerThread; i++) {
+                Operation operation = pick(random.nextInt(totalWeight));
+                String username = USERNAME_PREFIX + random.nextInt(users);
+                long start = System.nanoTime();
+                try {
+                    execute(operation, username);
+                    if (histograms != null) histograms.get(operation).record(System.nanoTime() - start);
+                } catch (RuntimeException e) {
+                    log.debug("{} failed for {}", operation, username, e);
+                    if (histograms != null) histograms.get(operation).recordError();
+                }
+            }
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+
+    private void execute(Operation operation, String username) {
+        switch (operation) {
+            case authenticate -> authenticationManager
+                    .authenticate(UsernamePasswordAuthenticationToken.unauthenticated(username, PASSWORD));
+            case loadUserByUsername -> userDetailsService.loadUserByUsername(username);
+            case updateUser -> userDetailsService.updateUser(JpaUser.builder().username(username).password(PASSWORD)
+                    .authorities(List.of(JpaAuthority.builder().authority(AUTHORITY).build())).build());
+            case changePassword -> {
+                SecurityContextHolder.getContext().setAuthentication(
+                        UsernamePasswordAuthenticationToken.authenticated(username, null, List.of()));
+                userDetailsService.changePassword(PASSWORD, PASSWORD);
+            }
+        }
+    }
+
+    private Operation pick(int roll) {
+        for (Map.Entry<Operation, Integer> entry : mix.entrySet()) {
+            roll -= entry.getValue();
+            if (roll < 0) return entry.getKey();
+        }
+        throw new IllegalStateException("Empty operation mix");
+    }
+
+    private ExecutorService newExecutor() {
+        if ("platform".equals(threadKind)) return Executors.newFixedThreadPool(threads);
+        if (!"virtual".equals(threadKind))
+            throw new IllegalArgumentException("Unsupported thread kind " + threadKind);
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual threads are not available on Java "
+                    + Runtime.version().feature(), e);
+        }
+    }
+
+    private String toJson(Map<Operation, LatencyHistogram> histograms, long elapsedNanos) {
+        double elapsedSeconds = elapsedNanos / 1e9;
+        long completed = histograms.values().stream().mapToLong(LatencyHistogram::count).sum();
+        StringBuilder json = new StringBuilder("{")
+                .append("\"timestamp\":\"").append(Instant.now()).append("\",")
+                .append("\"java\":\"").append(Runtime.version()).append("\",")
+                .append("\"cpus\":").append(Runtime.getRuntime().availableProcessors()).append(',')
+                .append("\"threadKind\":\"").append(threadKind).append("\",")
+                .append("\"threads\":").append(threads).append(',')
+                .append("\"users\":").append(users).append(',')
+                .append("\"poolSize\":").append(poolSize()).append(',')
+                .append("\"elapsedSeconds\":").append(elapsedSeconds).append(',')
+                .append("\"throughput\":").append(completed / elapsedSeconds).append(',')
+                .append("\"operations\":{");
+        boolean first = true;
+        for (Map.Entry<Operation, LatencyHistogram> entry : histograms.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            if (!first) json.append(',');
+            first = false;
+            json.append('"').append(entry.getKey()).append("\":{")
+                    .append("\"count\":").append(histogram.count()).append(',')
+                    .append("\"errors\":").append(histogram.errors()).append(',')
+                    .append("\"throughput\":").append(histogram.count() / elapsedSeconds).append(',')
+                    .append("\"meanMicros\":").append(histogram.meanMicros()).append(',')
+                    .append("\"p50Micros\":").append(histogram.percentileMicros(50)).append(',')
+                    .append("\"p99Micros\":").append(histogram.percentileMicros(99)).append(',')
+                    .append("\"p999Micros\":").append(histogram.percentileMicros(99.9)).append(',')
+                    .append("\"maxMicros\":").append(histogram.maxMicros()).append(',')
+                    .append("\"histogram\":").append(histogram.bucketsAsJson())
+                    .append('}');
+        }
+        return json.append("}}").toString();
+    }
+
+    private int poolSize() {
+        try {
+            return dataSource.unwrap(HikariDataSource.class).getMaximumPoolSize();
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String entry : mix.split(",")) {
+            String[] pair = entry.trim().split(":");
+            int weight = Integer.parseInt(pair[1].trim());
+            if (weight > 0) weights.put(Operation.valueOf(pair[0].trim()), weight);
+        }
+        if (weights.isEmpty()) throw new IllegalArgumentException("Empty operation mix " + mix);
+        return weights;
+    }
+}
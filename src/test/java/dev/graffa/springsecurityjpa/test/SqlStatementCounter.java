@@ -0,0 +1,92 @@
+package dev.graffa.springsecurityjpa.test;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * <p>
+ * Counts the SQL statements prepared by Hibernate on the current thread, so that tests can pin the number of
+ * selects, inserts, updates and deletes issued by each service operation and fail on N+1 regressions.
+ * </p>
+ * <p>
+ * In order to use the class, it is necessary to register it as the Hibernate statement inspector of the test
+ * datasource:
+ * </p>
+ *
+ * <pre>
+ * <code>spring.jpa.properties.hibernate.session_factory.statement_inspector=dev.graffa.springsecurityjpa.test.SqlStatementCounter</code>
+ * </pre>
+ *
+ * <p>
+ * The class is shipped in the <i>tests</i> classifier of the artifact, so it can be reused to check the services
+ * extending the ones of this library.
+ * </p>
+ *
+ * <p><b>Usage example</b></p>
+ *
+ * <pre>
+ * <code>SqlStatementCounter.assertStatements(SqlStatementCounts.of(1, 0, 0, 0),</code>
+ * <code>        () -> userService.loadUserByUsername("admin"));</code>
+ * </pre>
+ */
+public class SqlStatementCounter implements StatementInspector {
+    /**
+     * The statements of the counting scope active on each thread: outside of it, nothing is recorded, so that the
+     * inspector can stay registered for the whole test profile, load tests included.
+     */
+    private static final ThreadLocal<List<String>> statements = new ThreadLocal<>();
+
+    @Override
+    public String inspect(String sql) {
+        List<String> recorded = statements.get();
+        if (recorded != null) recorded.add(sql);
+        return sql;
+    }
+
+    /**
+     * Runs the operation in a counting scope and returns the statements it executed on the current thread.
+     */
+    public static List<String> record(Runnable operation) {
+        List<String> outer = statements.get(), recorded = new ArrayList<>();
+        statements.set(recorded);
+        try {
+            operation.run();
+        } finally {
+            if (outer == null) statements.remove();
+            else statements.set(outer);
+        }
+        return List.copyOf(recorded);
+    }
+
+    public static SqlStatementCounts counts(List<String> statements) {
+        int selects = 0, inserts = 0, updates = 0, deletes = 0;
+        for (String sql : statements) {
+            String statement = sql.stripLeading().toLowerCase(Locale.ROOT);
+            if (statement.startsWith("select") || statement.startsWith("with")) selects++;
+            else if (statement.startsWith("insert")) inserts++;
+            else if (statement.startsWith("update")) updates++;
+            else if (statement.startsWith("delete")) deletes++;
+        }
+        return SqlStatementCounts.of(selects, inserts, updates, deletes);
+    }
+
+    /**
+     * Runs the operation and returns the statements it executed.
+     */
+    public static SqlStatementCounts count(Runnable operation) {
+        return counts(record(operation));
+    }
+
+    /**
+     * Runs the operation and asserts the statements it executed, listing them on failure.
+     */
+    public static void assertStatements(SqlStatementCounts expected, Runnable operation) {
+        List<String> executed = record(operation);
+        assertEquals(expected, counts(executed), () -> "Unexpected statements:\n" + String.join("\n", executed));
+    }
+}
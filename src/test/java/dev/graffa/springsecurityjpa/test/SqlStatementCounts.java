@@ -0,0 +1,20 @@
+package dev.graffa.springsecurityjpa.test;
+
+/**
+ * <p>Number of SQL statements of each kind executed by an operation, as recorded by {@link SqlStatementCounter}.</p>
+ *
+ * @param selects number of <code>select</code> statements
+ * @param inserts number of <code>insert</code> statements
+ * @param updates number of <code>update</code> statements
+ * @param deletes number of <code>delete</code> statements
+ */
+public record SqlStatementCounts(int selects, int inserts, int updates, int deletes) {
+
+    public static SqlStatementCounts of(int selects, int inserts, int updates, int deletes) {
+        return new SqlStatementCounts(selects, inserts, updates, deletes);
+    }
+
+    public int total() {
+        return selects + inserts + updates + deletes;
+    }
+}